@@ -0,0 +1,60 @@
+package com.pm.analyticsservice.aggregation;
+
+import com.pm.analyticsservice.dto.EventTypeStatsDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Keeps live registration counts per event type in memory so dashboards can read them without going to a database
+//Counts start from zero when the service starts, they are not meant to replace historical reporting
+@Component
+public class PatientEventAggregator {
+    private final Map<String, EventTypeCounters> countersByEventType = new ConcurrentHashMap<>();
+
+    public void record(String eventType, long eventMillis) {
+        countersByEventType.computeIfAbsent(eventType, type -> new EventTypeCounters())
+                .record(eventMillis, System.currentTimeMillis());
+    }
+
+    public Map<String, EventTypeStatsDTO> getStats() {
+        long nowMillis = System.currentTimeMillis();
+        Map<String, EventTypeStatsDTO> stats = new TreeMap<>();
+        countersByEventType.forEach((eventType, counters) -> stats.put(eventType, counters.toDTO(nowMillis)));
+        return stats;
+    }
+
+    public EventTypeStatsDTO getStats(String eventType) {
+        EventTypeCounters counters = countersByEventType.get(eventType);
+        return counters == null ? null : counters.toDTO(System.currentTimeMillis());
+    }
+
+    private static final class EventTypeCounters {
+        //last minute in 1 second buckets, last hour in 1 minute buckets, last day in 1 hour buckets
+        private final RollingCounter lastMinute = new RollingCounter(TimeUnit.SECONDS.toMillis(1), 60);
+        private final RollingCounter lastHour = new RollingCounter(TimeUnit.MINUTES.toMillis(1), 60);
+        private final RollingCounter lastDay = new RollingCounter(TimeUnit.HOURS.toMillis(1), 24);
+        private final LongAdder total = new LongAdder();
+
+        private void record(long eventMillis, long nowMillis) {
+            lastMinute.increment(eventMillis, nowMillis);
+            lastHour.increment(eventMillis, nowMillis);
+            lastDay.increment(eventMillis, nowMillis);
+            total.increment();
+        }
+
+        private EventTypeStatsDTO toDTO(long nowMillis) {
+            EventTypeStatsDTO dto = new EventTypeStatsDTO();
+            dto.setLastMinute(lastMinute.sum(nowMillis));
+            dto.setLastHour(lastHour.sum(nowMillis));
+            dto.setLastDay(lastDay.sum(nowMillis));
+            dto.setTotal(total.sum());
+            dto.setPerMinuteLastHour(lastHour.series(nowMillis));
+            dto.setPerHourLastDay(lastDay.series(nowMillis));
+            return dto;
+        }
+    }
+}
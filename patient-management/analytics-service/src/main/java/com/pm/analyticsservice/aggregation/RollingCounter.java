@@ -0,0 +1,80 @@
+package com.pm.analyticsservice.aggregation;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Sliding window counter made of a fixed ring of time buckets, e.g. 60 buckets of 1 second = events in the last minute
+//Writers never lock: each bucket is a LongAdder (striped so concurrent increments do not fight over one cache line)
+//and when the ring wraps around the stale bucket is swapped for a fresh one with a compare-and-set
+public class RollingCounter {
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public RollingCounter(long bucketMillis, int bucketCount) {
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, new Bucket(-1));
+        }
+    }
+
+    public void increment(long eventMillis, long nowMillis) {
+        long nowEpoch = nowMillis / bucketMillis;
+        //events from the future (clock skew between services) count as now, events older than the window are dropped
+        long epoch = Math.min(eventMillis / bucketMillis, nowEpoch);
+        if (epoch <= nowEpoch - bucketCount) {
+            return;
+        }
+
+        int index = (int) (epoch % bucketCount);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket.epoch == epoch) {
+                bucket.count.increment();
+                return;
+            }
+            if (bucket.epoch > epoch) {
+                //a newer time bucket already took this slot, so this event is older than the window
+                return;
+            }
+            Bucket fresh = new Bucket(epoch);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                fresh.count.increment();
+                return;
+            }
+            //someone else rolled the bucket first, read it again
+        }
+    }
+
+    //total over the whole window (bucketMillis * bucketCount) ending now
+    public long sum(long nowMillis) {
+        long total = 0;
+        for (long count : series(nowMillis)) {
+            total += count;
+        }
+        return total;
+    }
+
+    //one count per bucket, oldest first and the current (partial) bucket last
+    public long[] series(long nowMillis) {
+        long nowEpoch = nowMillis / bucketMillis;
+        long[] series = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            long epoch = nowEpoch - bucketCount + 1 + i;
+            Bucket bucket = buckets.get((int) (epoch % bucketCount));
+            series[i] = bucket.epoch == epoch ? bucket.count.sum() : 0;
+        }
+        return series;
+    }
+
+    private static final class Bucket {
+        private final long epoch;
+        private final LongAdder count = new LongAdder();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.pm.analyticsservice.config;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.KafkaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class KafkaConsumerConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(KafkaConsumerConfig.class);
+    private static final Duration PARTITIONS_TIMEOUT = Duration.ofSeconds(10);
+
+    //patient-service creates the patient topic and owns its partition count, analytics only reads it
+    //One listener thread per partition the topic has, more threads would sit idle. If the topic does not exist yet
+    //spring.kafka.listener.concurrency is kept
+    @Bean
+    public ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> listenerConcurrency(
+            ConsumerFactory<?, ?> consumerFactory) {
+        return container -> {
+            int partitions = patientTopicPartitions(consumerFactory);
+            if (partitions > 0) {
+                container.setConcurrency(partitions);
+            }
+        };
+    }
+
+    private static int patientTopicPartitions(ConsumerFactory<?, ?> consumerFactory) {
+        try (Consumer<?, ?> consumer = consumerFactory.createConsumer()) {
+            return consumer.partitionsFor("patient", PARTITIONS_TIMEOUT).size();
+        } catch (KafkaException e) {
+            log.warn("Could not read the partitions of the patient topic: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    //Worker threads that process the key groups of a polled batch in parallel
+    //The listener threads (spring.kafka.listener.concurrency) only poll, hand the batch over here and wait for it to finish
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService eventProcessingExecutor(
+            @Value("${analytics.kafka.processing-threads:8}") int processingThreads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(processingThreads,
+                runnable -> new Thread(runnable, "event-processor-" + threadNumber.incrementAndGet()));
+    }
+}
@@ -0,0 +1,33 @@
+package com.pm.analyticsservice.controller;
+
+import com.pm.analyticsservice.aggregation.PatientEventAggregator;
+import com.pm.analyticsservice.dto.EventTypeStatsDTO;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+    private final PatientEventAggregator patientEventAggregator;
+
+    public AnalyticsController(PatientEventAggregator patientEventAggregator) {
+        this.patientEventAggregator = patientEventAggregator;
+    }
+
+    //Live patient event counts keyed by event type, read straight from memory
+    @GetMapping("/registrations")
+    public ResponseEntity<Map<String, EventTypeStatsDTO>> getRegistrationStats() {
+        return ResponseEntity.ok().body(patientEventAggregator.getStats());
+    }
+
+    @GetMapping("/registrations/{eventType}")
+    public ResponseEntity<EventTypeStatsDTO> getRegistrationStats(@PathVariable String eventType) {
+        EventTypeStatsDTO stats = patientEventAggregator.getStats(eventType);
+        return stats == null ? ResponseEntity.notFound().build() : ResponseEntity.ok().body(stats);
+    }
+}
@@ -0,0 +1,60 @@
+package com.pm.analyticsservice.dto;
+
+public class EventTypeStatsDTO {
+    private long lastMinute;
+    private long lastHour;
+    private long lastDay;
+    //since this analytics-service instance started
+    private long total;
+    //oldest bucket first, the last entry is the current (partial) minute/hour
+    private long[] perMinuteLastHour;
+    private long[] perHourLastDay;
+
+    public long getLastMinute() {
+        return lastMinute;
+    }
+
+    public void setLastMinute(long lastMinute) {
+        this.lastMinute = lastMinute;
+    }
+
+    public long getLastHour() {
+        return lastHour;
+    }
+
+    public void setLastHour(long lastHour) {
+        this.lastHour = lastHour;
+    }
+
+    public long getLastDay() {
+        return lastDay;
+    }
+
+    public void setLastDay(long lastDay) {
+        this.lastDay = lastDay;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long[] getPerMinuteLastHour() {
+        return perMinuteLastHour;
+    }
+
+    public void setPerMinuteLastHour(long[] perMinuteLastHour) {
+        this.perMinuteLastHour = perMinuteLastHour;
+    }
+
+    public long[] getPerHourLastDay() {
+        return perHourLastDay;
+    }
+
+    public void setPerHourLastDay(long[] perHourLastDay) {
+        this.perHourLastDay = perHourLastDay;
+    }
+}
@@ -1,30 +1,132 @@
 package com.pm.analyticsservice.kafka;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.analyticsservice.aggregation.PatientEventAggregator;
+import com.pm.analyticsservice.logging.LogSampler;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 
 @Service
 public class KafkaConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(KafkaConsumer.class);
 
-    @KafkaListener(topics="patient", groupId = "analytics-service")
-    public void consumeEvent(byte[] event){
+    private final ExecutorService eventProcessingExecutor;
+    private final PatientEventAggregator patientEventAggregator;
+    private final Tracer tracer;
+    private final Propagator propagator;
+    //a busy topic would otherwise be one synchronous log line per event
+    private final LogSampler eventLogSampler;
+
+    public KafkaConsumer(ExecutorService eventProcessingExecutor, PatientEventAggregator patientEventAggregator,
+                         Tracer tracer, ObjectProvider<Propagator> propagator,
+                         @Value("${log.payload.sample-rate:100}") int eventLogSampleRate) {
+        this.eventProcessingExecutor = eventProcessingExecutor;
+        this.patientEventAggregator = patientEventAggregator;
+        this.tracer = tracer;
+        this.propagator = propagator.getIfAvailable(() -> Propagator.NOOP);
+        this.eventLogSampler = new LogSampler(eventLogSampleRate);
+    }
+
+    //Gets a whole poll worth of records at once instead of one call per record
+    //Records with the same key (patient id) stay in order on one worker, different patients are processed in parallel
+    //The offsets are only committed once every record in the batch is processed, so a crash means the batch is redelivered, not lost
+    @KafkaListener(topics="patient", groupId = "analytics-service", batch = "true")
+    public void consumeEvents(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment){
+        Map<String, List<ConsumerRecord<String, byte[]>>> recordsByKey = records.stream()
+                .collect(Collectors.groupingBy(record -> Objects.requireNonNullElse(record.key(), ""),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        List<CompletableFuture<List<CountedEvent>>> groups = recordsByKey.values().stream()
+                .map(group -> CompletableFuture.supplyAsync(() -> group.stream()
+                        .map(this::consumeTracedEvent)
+                        .filter(Objects::nonNull)
+                        .toList(), eventProcessingExecutor))
+                .toList();
+
+        //if a group fails this throws, nothing is acknowledged and the container's error handler redelivers the batch
+        CompletableFuture.allOf(groups.toArray(CompletableFuture[]::new)).join();
+        //only counted once the whole batch went through, counting per group would count the groups that succeeded
+        //again when a failed batch is redelivered
+        groups.forEach(group -> group.join().forEach(event ->
+                patientEventAggregator.record(event.eventType(), event.eventMillis())));
+        acknowledgment.acknowledge();
+    }
+
+    //Spring only traces single record listeners, so each record of the batch gets its span here, continuing the trace
+    //of the request that produced it (patient-service puts the traceparent header on every event)
+    private CountedEvent consumeTracedEvent(ConsumerRecord<String, byte[]> record){
+        Span span = propagator.extract(record, KafkaConsumer::header)
+                .kind(Span.Kind.CONSUMER)
+                .name(record.topic() + " process")
+                .start();
+        try (Tracer.SpanInScope scope = tracer.withSpan(span)) {
+            return consumeEvent(record);
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private static String header(ConsumerRecord<String, byte[]> record, String key){
+        Header header = record.headers().lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    //returns what to count for the record, null when it is skipped
+    private CountedEvent consumeEvent(ConsumerRecord<String, byte[]> record){
 
         try {
-            PatientEvent patientEvent = PatientEvent.parseFrom(event);
+            PatientEvent patientEvent = PatientEvent.parseFrom(record.value());
             // perform any business related to analytics here
 
-            log.info("Received Patient Event: [PatientId = {}, PatientName = {}, " + "PatientEMail = {}",
-                    patientEvent.getPatientId(),
-                    patientEvent.getName(),
-                    patientEvent.getEmail());
+            log.debug("Received Patient Event: [Type = {}, PatientId = {}]", patientEvent.getType(), patientEvent.getPatientId());
+            if (eventLogSampler.sample()) {
+                log.info("Received Patient Event: [Type = {}, PatientId = {}, PatientName = {}, " + "PatientEMail = {}",
+                        patientEvent.getType(),
+                        patientEvent.getPatientId(),
+                        patientEvent.getName(),
+                        patientEvent.getEmail());
+            }
+            //the record timestamp is when patient-service produced the event, so a consumer lag does not shift the counts
+            return new CountedEvent(eventType(patientEvent), record.timestamp());
         } catch (InvalidProtocolBufferException e) {
-            log.error("Error deserializing event {}", e.getMessage());
+            //a corrupt message will never parse, so we skip it instead of blocking the partition
+            log.error("Error deserializing event at {}-{}@{}: {}", record.topic(), record.partition(), record.offset(), e.getMessage());
+            return null;
         }
     }
+
+    //events from before the type enum only have the free text event_type
+    private static String eventType(PatientEvent patientEvent){
+        return patientEvent.getType() == PatientEventType.PATIENT_EVENT_TYPE_UNSPECIFIED
+                ? patientEvent.getEventType()
+                : patientEvent.getType().name();
+    }
+
+    private record CountedEvent(String eventType, long eventMillis) {
+    }
 }
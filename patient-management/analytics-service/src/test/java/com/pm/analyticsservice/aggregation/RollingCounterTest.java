@@ -0,0 +1,59 @@
+package com.pm.analyticsservice.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollingCounterTest {
+
+    @Test
+    void countsEventsInsideTheWindowOnly() {
+        RollingCounter counter = new RollingCounter(1000, 5);
+        long now = 100_000;
+
+        counter.increment(now, now);
+        counter.increment(now - 1000, now);
+        counter.increment(now - 4000, now);
+        //older than the 5 second window
+        counter.increment(now - 5000, now);
+
+        assertEquals(3, counter.sum(now));
+        assertArrayEquals(new long[]{1, 0, 0, 1, 1}, counter.series(now));
+    }
+
+    @Test
+    void oldBucketsExpireWhenTheRingWrapsAround() {
+        RollingCounter counter = new RollingCounter(1000, 5);
+        long start = 100_000;
+
+        counter.increment(start, start);
+        counter.increment(start, start);
+        long later = start + 5000;
+        counter.increment(later, later);
+
+        //the slot is reused for the new second and the two old events are gone
+        assertEquals(1, counter.sum(later));
+        assertEquals(0, counter.sum(later + 5000));
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws InterruptedException {
+        RollingCounter counter = new RollingCounter(60_000, 10);
+        long now = 600_000;
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    counter.increment(now, now);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, counter.sum(now));
+    }
+}
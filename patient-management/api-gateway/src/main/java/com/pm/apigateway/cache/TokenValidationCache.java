@@ -0,0 +1,104 @@
+package com.pm.apigateway.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+
+//Remembers what auth-service said about a token so the same bearer token is not sent to /validate on every request
+//Keys are a SHA-256 of the token so we never keep usable tokens in memory
+//A valid result is never kept past the token's exp claim, and a rejected token is cached for a short while (it can never become valid)
+@Component
+public class TokenValidationCache {
+    private final Cache<String, CachedValidation> cache;
+    private final ObjectMapper objectMapper;
+    private final Duration maxTtl;
+    private final Duration negativeTtl;
+
+    public TokenValidationCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                @Value("${auth.validation.cache.max-size:100000}") long maxSize,
+                                @Value("${auth.validation.cache.max-ttl:5m}") Duration maxTtl,
+                                @Value("${auth.validation.cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.objectMapper = objectMapper;
+        this.maxTtl = maxTtl;
+        this.negativeTtl = negativeTtl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, CachedValidation>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedValidation value, long currentTime) {
+                        return value.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedValidation value, long currentTime, long currentDuration) {
+                        return value.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedValidation value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        //shows up as cache.gets{cache=jwt-validation,result=hit|miss}, cache.evictions etc.
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt-validation");
+    }
+
+    //null when we have not seen this token recently and auth-service has to be asked
+    public Boolean get(String token) {
+        CachedValidation cached = cache.getIfPresent(hash(token));
+        return cached == null ? null : cached.valid();
+    }
+
+    public void putValid(String token) {
+        Duration ttl = ttlUntilExpiry(token);
+        if (!ttl.isNegative() && !ttl.isZero()) {
+            cache.put(hash(token), new CachedValidation(true, ttl));
+        }
+    }
+
+    public void putInvalid(String token) {
+        cache.put(hash(token), new CachedValidation(false, negativeTtl));
+    }
+
+    //auth-service already checked the signature, we only read exp out of the payload to know when to stop trusting the result
+    private Duration ttlUntilExpiry(String token) {
+        try {
+            String payload = token.split("\\.")[1];
+            JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(payload));
+            if (!claims.hasNonNull("exp")) {
+                return maxTtl;
+            }
+            Duration untilExpiry = Duration.ofSeconds(claims.get("exp").asLong() - System.currentTimeMillis() / 1000);
+            return untilExpiry.compareTo(maxTtl) < 0 ? untilExpiry : maxTtl;
+        } catch (Exception e) {
+            return Duration.ZERO;
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record CachedValidation(boolean valid, Duration ttl) {
+    }
+}
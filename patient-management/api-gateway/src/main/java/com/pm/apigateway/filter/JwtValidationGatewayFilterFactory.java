@@ -1,13 +1,23 @@
 package com.pm.apigateway.filter;
 
+import com.pm.apigateway.cache.TokenValidationCache;
+import com.pm.apigateway.util.JwtUtil;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
 
-import java.net.http.HttpHeaders;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 
@@ -24,10 +34,22 @@ public class JwtValidationGatewayFilterFactory extends
 
 
     private final WebClient webClient;
+    //only there when auth.validation.mode=local, otherwise every token is sent to auth-service to be validated
+    private final JwtUtil jwtUtil;
+    private final TokenValidationCache tokenValidationCache;
+    private final Map<String, Mono<Boolean>> inFlightValidations = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
     //Dependency injected from WebClient.Builder
+    //(spring's builder is instrumented, so the /validate call gets its own span and carries the traceparent header)
     public JwtValidationGatewayFilterFactory(WebClient.Builder webClientBuilder,
-                                             @Value("${auth.service.url}") String authServiceUrl) {
+                                             @Value("${auth.service.url}") String authServiceUrl,
+                                             ObjectProvider<JwtUtil> jwtUtil,
+                                             TokenValidationCache tokenValidationCache,
+                                             MeterRegistry meterRegistry) {
         this.webClient = webClientBuilder.baseUrl(authServiceUrl).build();
+        this.jwtUtil = jwtUtil.getIfAvailable();
+        this.tokenValidationCache = tokenValidationCache;
+        this.meterRegistry = meterRegistry;
     }
     @Override
     public GatewayFilter apply(Object config) {
@@ -36,16 +58,79 @@ public class JwtValidationGatewayFilterFactory extends
         return (exchange, chain) -> {
             String token = exchange.getRequest().getHeaders().getFirst(AUTHORIZATION);
             if(token == null || !token.startsWith("Bearer ")) {
-                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-                return exchange.getResponse().setComplete();
+                return unauthorized(exchange);
             }
 
-            return webClient.get()
-                    .uri("/validate")
-                    .header(AUTHORIZATION, token)
-                    .retrieve()
-                    .toBodilessEntity()
-                    .then(chain.filter(exchange));
+            //only the validation is timed, not the rest of the chain (that is the downstream service)
+            Timer.Sample sample = Timer.start(meterRegistry);
+            if(jwtUtil != null) {
+                //local mode: checking an HMAC signature takes microseconds, so we do it right here instead of a round trip
+                try {
+                    jwtUtil.validateToken(token.substring(7));
+                } catch (JwtException | IllegalArgumentException e) {
+                    record(sample, "local", "invalid");
+                    return unauthorized(exchange);
+                }
+                record(sample, "local", "valid");
+                return chain.filter(exchange);
+            }
+
+            //remote mode: only ask auth-service about tokens we have not seen recently
+            String tokenValue = token.substring(7);
+            Boolean cached = tokenValidationCache.get(tokenValue);
+            if(cached != null) {
+                record(sample, "cache", cached ? "valid" : "invalid");
+                if(cached) {
+                    return chain.filter(exchange);
+                }
+                return unauthorized(exchange);
+            }
+
+            return validateRemotely(tokenValue)
+                    .doOnError(e -> record(sample, "remote", "error"))
+                    .flatMap(valid -> {
+                        record(sample, "remote", valid ? "valid" : "invalid");
+                        if(valid) {
+                            return chain.filter(exchange);
+                        }
+                        return unauthorized(exchange);
+                    });
         };
     }
+
+    //gateway.jwt.validation timer, mode says where the answer came from: local signature check, cache or auth-service
+    private void record(Timer.Sample sample, String mode, String outcome) {
+        sample.stop(Timer.builder("gateway.jwt.validation")
+                .description("JWT validation in the gateway filter")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private static Mono<Void> unauthorized(ServerWebExchange exchange) {
+        exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+        return exchange.getResponse().setComplete();
+    }
+
+    //Single flight: when a dashboard fires 30 requests with the same token at once, only the first one calls auth-service
+    //and the rest subscribe to the same in flight Mono. The entry is removed as soon as the answer is in the cache
+    private Mono<Boolean> validateRemotely(String token) {
+        return inFlightValidations.computeIfAbsent(token, key -> webClient.get()
+                .uri("/validate")
+                .header(AUTHORIZATION, "Bearer " + key)
+                .retrieve()
+                .toBodilessEntity()
+                .map(response -> {
+                    tokenValidationCache.putValid(key);
+                    return true;
+                })
+                //only a definite 401 is cached, auth-service being down or erroring should not lock a user out
+                .onErrorResume(WebClientResponseException.Unauthorized.class, e -> {
+                    tokenValidationCache.putInvalid(key);
+                    return Mono.just(false);
+                })
+                .doFinally(signal -> inFlightValidations.remove(key))
+                .cache());
+    }
 }
@@ -0,0 +1,36 @@
+package com.pm.apigateway.util;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+//Verifies tokens in the gateway itself with the same secret auth-service's JwtUtil signs them with
+//so an authenticated request does not need an extra network call to auth-service /validate
+@Component
+@ConditionalOnProperty(name = "auth.validation.mode", havingValue = "local", matchIfMissing = true)
+public class JwtUtil {
+    private final SecretKey secretKey;
+
+    public JwtUtil(@Value("${jwt.secret}") String secret) {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("jwt.secret (JWT_SECRET) must be set when auth.validation.mode=local");
+        }
+        byte[] keyBytes = Base64.getDecoder().decode(secret.getBytes(
+                StandardCharsets.UTF_8));
+        this.secretKey = Keys.hmacShaKeyFor(keyBytes);
+    }
+
+    //checks the signature and the exp claim, throws JwtException if either is wrong
+    public void validateToken(String token) {
+        Jwts.parser().verifyWith(secretKey)
+                .build()
+                .parseSignedClaims(token);
+    }
+}
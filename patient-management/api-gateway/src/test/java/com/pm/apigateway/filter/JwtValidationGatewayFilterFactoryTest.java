@@ -0,0 +1,131 @@
+package com.pm.apigateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.apigateway.cache.TokenValidationCache;
+import com.pm.apigateway.util.JwtUtil;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JwtValidationGatewayFilterFactoryTest {
+    private static final String SECRET = "aDKUgeZa9N8vPbJCmoVPKcpGwzREafsu9Jqr5xzlYKA";
+    private static final SecretKey KEY = Keys.hmacShaKeyFor(Base64.getDecoder().decode(SECRET));
+
+    //stands in for auth-service /validate, tokens ending in "x" are rejected
+    private HttpServer authService;
+    private final AtomicInteger validateCalls = new AtomicInteger();
+
+    @BeforeEach
+    void startAuthService() throws IOException {
+        authService = HttpServer.create(new InetSocketAddress(0), 0);
+        authService.createContext("/validate", exchange -> {
+            validateCalls.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean valid = !exchange.getRequestHeaders().getFirst("Authorization").endsWith("x");
+            exchange.sendResponseHeaders(valid ? 200 : 401, -1);
+            exchange.close();
+        });
+        authService.setExecutor(Executors.newFixedThreadPool(32));
+        authService.start();
+    }
+
+    @AfterEach
+    void stopAuthService() {
+        authService.stop(0);
+    }
+
+    @Test
+    void localModeChecksSignatureAndExpiryWithoutCallingAuthService() {
+        GatewayFilter filter = filter(new JwtUtil(SECRET));
+
+        assertEquals(HttpStatus.OK, run(filter, token(60_000)));
+        assertEquals(HttpStatus.UNAUTHORIZED, run(filter, token(-60_000)));
+        assertEquals(HttpStatus.UNAUTHORIZED, run(filter, token(60_000) + "x"));
+        assertEquals(0, validateCalls.get());
+    }
+
+    @Test
+    void remoteModeCachesValidAndRejectedTokens() {
+        GatewayFilter filter = filter(null);
+        String token = token(60_000);
+
+        assertEquals(HttpStatus.OK, run(filter, token));
+        assertEquals(HttpStatus.OK, run(filter, token));
+        assertEquals(HttpStatus.UNAUTHORIZED, run(filter, token + "x"));
+        assertEquals(HttpStatus.UNAUTHORIZED, run(filter, token + "x"));
+        assertEquals(2, validateCalls.get());
+    }
+
+    @Test
+    void concurrentRemoteValidationsOfTheSameTokenShareOneCall() {
+        GatewayFilter filter = filter(null);
+        String token = token(60_000);
+
+        //flatMap subscribes to all 30 filters before the first /validate call has answered
+        Flux.range(0, 30)
+                .flatMap(i -> filter.filter(exchange(token), passed -> Mono.empty()))
+                .blockLast();
+
+        assertEquals(1, validateCalls.get());
+    }
+
+    private GatewayFilter filter(JwtUtil jwtUtil) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        if (jwtUtil != null) {
+            beans.addBean("jwtUtil", jwtUtil);
+        }
+        TokenValidationCache cache = new TokenValidationCache(new ObjectMapper(), new SimpleMeterRegistry(),
+                1000, Duration.ofMinutes(5), Duration.ofSeconds(30));
+        return new JwtValidationGatewayFilterFactory(WebClient.builder(),
+                "http://localhost:" + authService.getAddress().getPort(),
+                beans.getBeanProvider(JwtUtil.class), cache, new SimpleMeterRegistry()).apply(new Object());
+    }
+
+    //OK means the request was passed on down the filter chain
+    private static HttpStatus run(GatewayFilter filter, String token) {
+        MockServerWebExchange exchange = exchange(token);
+        filter.filter(exchange, passed -> Mono.fromRunnable(() -> passed.getResponse().setStatusCode(HttpStatus.OK)))
+                .block();
+        return (HttpStatus) exchange.getResponse().getStatusCode();
+    }
+
+    private static MockServerWebExchange exchange(String token) {
+        return MockServerWebExchange.from(
+                MockServerHttpRequest.get("/patients").header("Authorization", "Bearer " + token));
+    }
+
+    private static String token(long expiresInMillis) {
+        return Jwts.builder()
+                .subject("testuser@test.com")
+                .expiration(new Date(System.currentTimeMillis() + expiresInMillis))
+                .signWith(KEY)
+                .compact();
+    }
+}
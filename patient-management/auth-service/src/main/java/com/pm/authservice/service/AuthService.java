@@ -4,11 +4,14 @@ import com.pm.authservice.dto.LoginRequestDTO;
 import com.pm.authservice.model.User;
 import com.pm.authservice.util.JwtUtil;
 import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.security.SignatureException;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class AuthService {
@@ -16,23 +19,43 @@ public class AuthService {
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
+    private final Timer loginSucceeded;
+    private final Timer loginFailed;
+    //bcrypt on its own, it is meant to be slow so it is usually most of a login
+    private final Timer passwordMatch;
 
-    public AuthService(UserService userService, PasswordEncoder passwordEncoder, JwtUtil jwtUtil) {
+    public AuthService(UserService userService, PasswordEncoder passwordEncoder, JwtUtil jwtUtil, MeterRegistry meterRegistry) {
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtil = jwtUtil;
+        this.loginSucceeded = authenticateTimer("success", meterRegistry);
+        this.loginFailed = authenticateTimer("failure", meterRegistry);
+        this.passwordMatch = Timer.builder("auth.password.match")
+                .description("BCrypt password check")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
 
 // password request -> password -> encoded -> $wwegfwefwfjhyj5 -> uses this password to find in the database for the given record
     public Optional<String> authenticate(LoginRequestDTO loginRequestDTO) {
+        long start = System.nanoTime();
         Optional<String> token = userService.findByEmail(loginRequestDTO.getEmail())
-                .filter(u -> passwordEncoder.matches(loginRequestDTO.getPassword(), u.getPassword()))
+                .filter(u -> passwordMatch.record(() -> passwordEncoder.matches(loginRequestDTO.getPassword(), u.getPassword())))
                 .map(u -> jwtUtil.generateToken(u.getEmail(), u.getRole()));
 
+        (token.isPresent() ? loginSucceeded : loginFailed).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         return token;
     }
 
+    private static Timer authenticateTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("auth.authenticate")
+                .description("Login: user lookup, password check and token generation")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
     public boolean validateToken(String token) {
         try{
             jwtUtil.validateToken(token);
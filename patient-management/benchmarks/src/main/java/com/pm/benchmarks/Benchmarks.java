@@ -0,0 +1,23 @@
+package com.pm.benchmarks;
+
+import com.pm.patientservice.model.Patient;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+//Test data shared by the benchmarks, sized like real rows so string copies and encodings cost what they do in production
+final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    static Patient patient(int i) {
+        Patient patient = new Patient();
+        patient.setId(UUID.randomUUID());
+        patient.setName("Patient Number " + i);
+        patient.setEmail("patient.number." + i + "@example.com");
+        patient.setAddress(i + " Main Street, Springfield");
+        patient.setDateOfBirth(LocalDate.of(1980, 1, 1).plusDays(i % 10000));
+        patient.setRegisteredDate(LocalDate.of(2024, 1, 1).plusDays(i % 365));
+        return patient;
+    }
+}
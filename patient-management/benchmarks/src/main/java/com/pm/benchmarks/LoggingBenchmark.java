@@ -0,0 +1,132 @@
+package com.pm.benchmarks;
+
+import billing.BillingResponse;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.logging.LogSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Request threads logging a billing response, with the appenders from logback-spring.xml
+//sync             = spring boot's default, every thread writes (and flushes) the line itself under the appender's lock
+//async            = what the services use now, lines are queued and INFO is dropped when the queue is nearly full
+//async-no-discard = same queue but nothing is dropped, a full queue makes the caller wait
+//The lines go to a temp file instead of the console so jmh's own output stays readable
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    private static final String PATTERN = "%d{ISO8601} %5p [%15.15t] %-40.40logger{39} : %m%n";
+
+    @Param({"sync", "async", "async-no-discard"})
+    public String appender;
+
+    private LoggerContext loggerContext;
+    private Logger log;
+    private Path logFile;
+    private BillingResponse response;
+    private LogSampler payloadLogSampler;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = Files.createTempFile("logging-benchmark", ".log");
+        loggerContext = new LoggerContext();
+        loggerContext.start();
+
+        Appender<ILoggingEvent> fileAppender = fileAppender();
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(switch (appender) {
+            case "sync" -> fileAppender;
+            case "async" -> asyncAppender(fileAppender, 1638);
+            case "async-no-discard" -> asyncAppender(fileAppender, 0);
+            default -> throw new IllegalArgumentException(appender);
+        });
+        log = loggerContext.getLogger(BillingServiceGrpcClient.class);
+
+        response = BillingResponse.newBuilder()
+                .setAccountId(UUID.randomUUID().toString())
+                .setStatus("ACTIVE")
+                .setPatientId(UUID.randomUUID().toString())
+                .build();
+        payloadLogSampler = new LogSampler(100);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loggerContext.stop();
+        Files.deleteIfExists(logFile);
+    }
+
+    //what BillingServiceGrpcClient did before, the whole response on every call
+    @Benchmark
+    public void everyPayload() {
+        log.info("Received response from billing service via GRPC: {}", response);
+    }
+
+    //what it does now, the ids at debug (off) and the whole response for one call in 100
+    @Benchmark
+    public void sampledPayload() {
+        log.debug("Billing account {} created for patient {}", response.getAccountId(), response.getPatientId());
+        if (payloadLogSampler.sample()) {
+            log.info("Received response from billing service via GRPC: {}", response);
+        }
+    }
+
+    //the console appender flushes every line, so the file appender does as well
+    private Appender<ILoggingEvent> fileAppender() {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(loggerContext);
+        fileAppender.setFile(logFile.toString());
+        fileAppender.setAppend(false);
+        fileAppender.setImmediateFlush(true);
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+        return fileAppender;
+    }
+
+    //same settings as logback-spring.xml
+    private Appender<ILoggingEvent> asyncAppender(Appender<ILoggingEvent> delegate, int discardingThreshold) {
+        AsyncAppender asyncAppender = new AsyncAppender();
+        asyncAppender.setContext(loggerContext);
+        asyncAppender.setQueueSize(8192);
+        asyncAppender.setDiscardingThreshold(discardingThreshold);
+        asyncAppender.setIncludeCallerData(false);
+        asyncAppender.addAppender(delegate);
+        asyncAppender.start();
+        return asyncAppender;
+    }
+}
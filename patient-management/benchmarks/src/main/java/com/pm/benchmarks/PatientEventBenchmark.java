@@ -0,0 +1,81 @@
+package com.pm.benchmarks;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.patientservice.kafka.KafkaProducer;
+import com.pm.patientservice.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import patient.events.PatientEvent;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//PatientEvent as KafkaProducer builds it (patient-service) and as the consumers read it (analytics, the index and cache consumers)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatientEventBenchmark {
+    private Patient patient;
+    private PatientEvent createdEvent;
+    private byte[] createdEventBytes;
+    private byte[] updatedEventBytes;
+
+    @Setup
+    public void setUp() {
+        patient = Benchmarks.patient(0);
+        createdEvent = createdEvent();
+        createdEventBytes = createdEvent.toByteArray();
+        updatedEventBytes = updatedEvent().toByteArray();
+    }
+
+    @Benchmark
+    public PatientEvent buildCreated() {
+        return createdEvent();
+    }
+
+    @Benchmark
+    public PatientEvent buildUpdated() {
+        return updatedEvent();
+    }
+
+    @Benchmark
+    public byte[] toByteArray() {
+        return createdEvent.toByteArray();
+    }
+
+    //build + serialize, what saveEvent does for every write
+    @Benchmark
+    public byte[] buildAndSerializeCreated() {
+        return createdEvent().toByteArray();
+    }
+
+    @Benchmark
+    public PatientEvent parseCreated() throws InvalidProtocolBufferException {
+        return PatientEvent.parseFrom(createdEventBytes);
+    }
+
+    @Benchmark
+    public PatientEvent parseUpdated() throws InvalidProtocolBufferException {
+        return PatientEvent.parseFrom(updatedEventBytes);
+    }
+
+    private PatientEvent createdEvent() {
+        return KafkaProducer.createdEvent(patient);
+    }
+
+    //an update that only changed the name and email
+    private PatientEvent updatedEvent() {
+        return KafkaProducer.updatedEvent(patient, List.of(KafkaProducer.NAME_FIELD, KafkaProducer.EMAIL_FIELD));
+    }
+}
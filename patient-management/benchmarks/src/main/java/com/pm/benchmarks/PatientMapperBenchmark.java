@@ -0,0 +1,53 @@
+package com.pm.benchmarks;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Entity <-> DTO mapping, done on every create, update and get
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatientMapperBenchmark {
+    private Patient patient;
+    private PatientRequestDTO patientRequestDTO;
+
+    @Setup
+    public void setUp() {
+        patient = Benchmarks.patient(0);
+
+        patientRequestDTO = new PatientRequestDTO();
+        patientRequestDTO.setName(patient.getName());
+        patientRequestDTO.setEmail(patient.getEmail());
+        patientRequestDTO.setAddress(patient.getAddress());
+        patientRequestDTO.setDateOfBirth(patient.getDateOfBirth().toString());
+        patientRequestDTO.setRegisteredDate(patient.getRegisteredDate().toString());
+    }
+
+    @Benchmark
+    public PatientResponseDTO toDTO() {
+        return PatientMapper.toDTO(patient);
+    }
+
+    //mostly the two LocalDate.parse calls
+    @Benchmark
+    public Patient toModel() {
+        return PatientMapper.toModel(patientRequestDTO);
+    }
+}
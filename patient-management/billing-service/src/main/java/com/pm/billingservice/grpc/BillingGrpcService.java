@@ -1,30 +1,171 @@
 package com.pm.billingservice.grpc;
 
+import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc.BillingServiceImplBase;
+import com.pm.billingservice.logging.LogSampler;
+import com.pm.billingservice.model.BillingAccount;
+import com.pm.billingservice.service.BillingAccountService;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @GrpcService
 public class BillingGrpcService extends BillingServiceImplBase{
     private static final Logger log = LoggerFactory.getLogger(BillingGrpcService.class);
 
+    private final BillingAccountService billingAccountService;
+    //how many requests of one CreateBillingAccounts stream can wait for their group commit at once
+    private final int maxPendingPerStream;
+    //the whole request is only logged for a sample of the calls, protobuf toString() is not cheap
+    private final LogSampler payloadLogSampler;
+
+    public BillingGrpcService(BillingAccountService billingAccountService,
+                              @Value("${billing.accounts.group-commit.max-batch-size:500}") int maxPendingPerStream,
+                              @Value("${log.payload.sample-rate:100}") int payloadLogSampleRate) {
+        this.billingAccountService = billingAccountService;
+        this.maxPendingPerStream = maxPendingPerStream;
+        this.payloadLogSampler = new LogSampler(payloadLogSampleRate);
+    }
+
+    //The grpc thread only queues the account, the response is sent from the writer thread once it is committed
     @Override
     public void createBillingAccount(billing.BillingRequest billingRequest,
            StreamObserver<BillingResponse> responseObserver) {
 
-         log.info("CreateBillingAccount request received {}", billingRequest.toString());
+         log.debug("CreateBillingAccount request received for patient {}", billingRequest.getPatientId());
+         if (payloadLogSampler.sample()) {
+             log.info("CreateBillingAccount request received {}", billingRequest);
+         }
+
+        ServerCallStreamObserver<BillingResponse> serverObserver =
+                (ServerCallStreamObserver<BillingResponse>) responseObserver;
+        billingAccountService.createAccount(billingRequest.getPatientId(), billingRequest.getName(), billingRequest.getEmail())
+                .whenComplete((account, e) -> {
+                    //the client gave up (deadline or cancel) while the account was being saved, it is still saved
+                    //and a retry gets the same account back
+                    if (serverObserver.isCancelled()) {
+                        return;
+                    }
+                    if (e != null) {
+                        serverObserver.onError(toStatus(e));
+                        return;
+                    }
+                    serverObserver.onNext(toResponse(account));
+                    serverObserver.onCompleted();
+                });
+    }
+
+    @Override
+    public StreamObserver<BillingRequest> createBillingAccounts(StreamObserver<BillingResponse> responseObserver) {
+        //Manual flow control: we only ask grpc for the next request while this stream has fewer than maxPendingPerStream
+        //accounts waiting to be committed and the client is reading our responses, so a fast client cannot make us
+        //buffer thousands of requests (or responses) in memory. Up to a whole batch can be waiting, so one stream
+        //still fills a group commit
+        ServerCallStreamObserver<BillingResponse> serverObserver =
+                (ServerCallStreamObserver<BillingResponse>) responseObserver;
+        serverObserver.disableAutoRequest();
+
+        StreamState stream = new StreamState(serverObserver);
+        serverObserver.setOnReadyHandler(stream::requestMore);
+
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(BillingRequest billingRequest) {
+                stream.received.incrementAndGet();
+                stream.pending.incrementAndGet();
+                stream.requested.set(false);
 
-         //Business logic - e.g save to database, perform calculates etc
+                billingAccountService.createAccount(billingRequest.getPatientId(), billingRequest.getName(), billingRequest.getEmail())
+                        .whenComplete((account, e) -> {
+                            if (e == null) {
+                                stream.send(toResponse(account));
+                            } else {
+                                //no response for this patient, the client fails just that one when the stream ends
+                                log.warn("No billing account for patient {}: {}", billingRequest.getPatientId(), e.getMessage());
+                            }
+                            stream.pending.decrementAndGet();
+                            stream.requestMore();
+                            stream.completeIfDone();
+                        });
+                stream.requestMore();
+            }
 
-        BillingResponse response = BillingResponse.newBuilder()
-                .setAccountId("12345")
-                .setStatus("ACTIVE")
+            @Override
+            public void onError(Throwable t) {
+                stream.finished.set(true);
+                log.warn("CreateBillingAccounts stream failed after {} requests: {}", stream.received.get(), t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                //the client has sent everything, the stream ends once the last pending account is answered
+                stream.clientDone.set(true);
+                stream.completeIfDone();
+            }
+        };
+    }
+
+    private static BillingResponse toResponse(BillingAccount account) {
+        return BillingResponse.newBuilder()
+                .setAccountId(account.getId().toString())
+                .setStatus(account.getStatus())
+                .setPatientId(account.getPatientId())
                 .build();
+    }
+
+    //the account is safe to retry (a patient only ever gets one), so database trouble is UNAVAILABLE which the client retries
+    private static StatusRuntimeException toStatus(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            return Status.RESOURCE_EXHAUSTED.withDescription(cause.getMessage()).asRuntimeException();
+        }
+        return Status.UNAVAILABLE.withDescription("Could not save billing account").withCause(cause).asRuntimeException();
+    }
+
+    //Responses are sent from the account writer thread while requests arrive on grpc threads
+    private class StreamState {
+        private final ServerCallStreamObserver<BillingResponse> serverObserver;
+        private final AtomicInteger received = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        //true while a request(1) is outstanding, so we never ask grpc for more than one message at a time
+        private final AtomicBoolean requested = new AtomicBoolean();
+        private final AtomicBoolean clientDone = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private StreamState(ServerCallStreamObserver<BillingResponse> serverObserver) {
+            this.serverObserver = serverObserver;
+        }
+
+        private void requestMore() {
+            if (!clientDone.get() && pending.get() < maxPendingPerStream && serverObserver.isReady()
+                    && requested.compareAndSet(false, true)) {
+                serverObserver.request(1);
+            }
+        }
+
+        //the observer is not thread safe, completeIfDone can run on a grpc thread at the same time
+        private synchronized void send(BillingResponse response) {
+            if (!finished.get() && !serverObserver.isCancelled()) {
+                serverObserver.onNext(response);
+            }
+        }
 
-        responseObserver.onNext(response);
-        responseObserver.onCompleted();
+        private synchronized void completeIfDone() {
+            if (clientDone.get() && pending.get() == 0 && finished.compareAndSet(false, true)) {
+                log.info("CreateBillingAccounts stream completed with {} requests", received.get());
+                serverObserver.onCompleted();
+            }
+        }
     }
 }
@@ -0,0 +1,67 @@
+package com.pm.billingservice.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+//One billing account per patient, the id is the account id patient-service gets back
+@Entity
+@Table(name = "billing_account")
+public class BillingAccount {
+    //generated in the jvm at persist time (not by the database) so a group commit can send its inserts as one jdbc batch
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    //unique so a retried or duplicated CreateBillingAccount can never open a second account for the same patient
+    @Column(nullable = false, unique = true)
+    private String patientId;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private String email;
+
+    @Column(nullable = false)
+    private String status;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public BillingAccount() {
+    }
+
+    public BillingAccount(String patientId, String name, String email) {
+        this.patientId = patientId;
+        this.name = name;
+        this.email = email;
+        this.status = "ACTIVE";
+        this.createdAt = Instant.now();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,156 @@
+package com.pm.billingservice.service;
+
+import com.pm.billingservice.model.BillingAccount;
+import com.pm.billingservice.repository.BillingAccountRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//Group commit for new billing accounts: every grpc call just queues its account, and one writer thread saves whatever
+//has arrived within window-ms in a single transaction with the inserts sent as one jdbc batch
+//A burst of patient registrations then costs one commit per batch instead of one per patient, and no grpc thread
+//waits on the database
+@Service
+public class BillingAccountService {
+    private static final Logger log = LoggerFactory.getLogger(BillingAccountService.class);
+
+    private final BillingAccountRepository billingAccountRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    //bounded so a database outage turns into RESOURCE_EXHAUSTED for the callers instead of an ever growing queue
+    private final BlockingQueue<PendingAccount> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public BillingAccountService(BillingAccountRepository billingAccountRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${billing.accounts.group-commit.window-ms:5}") long windowMs,
+                                 @Value("${billing.accounts.group-commit.max-batch-size:500}") int maxBatchSize,
+                                 @Value("${billing.accounts.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.billingAccountRepository = billingAccountRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeLoop, "billing-account-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    //Completes once the transaction holding the account is committed
+    //A patient that already has an account gets that one back, so a retried call never creates a second account
+    public CompletableFuture<BillingAccount> createAccount(String patientId, String name, String email) {
+        PendingAccount pending = new PendingAccount(patientId, name, email, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            pending.future().completeExceptionally(new RejectedExecutionException("Too many billing accounts waiting to be saved"));
+        }
+        return pending.future();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        //the writer saves what is still queued before it stops
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void writeLoop() {
+        List<PendingAccount> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAccount first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                //give concurrent calls window-ms to join this commit, a full batch is written straight away
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingAccount next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                //never let the writer die, whoever is still waiting in this batch gets the error
+                log.error("Billing account writer error: {}", e.getMessage());
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingAccount> batch) {
+        Map<String, BillingAccount> accounts;
+        try {
+            accounts = transactionTemplate.execute(status -> save(batch));
+        } catch (DataIntegrityViolationException e) {
+            //another instance created one of these accounts between our lookup and the insert and the whole batch
+            //was rolled back, saving them one by one picks up that account and only costs us on this rare path
+            log.warn("Billing account batch of {} rolled back, saving one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::writeOne);
+            return;
+        } catch (Exception e) {
+            log.error("Could not save batch of {} billing accounts: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+            return;
+        }
+
+        //only answer once the accounts are committed
+        batch.forEach(pending -> pending.future().complete(accounts.get(pending.patientId())));
+    }
+
+    private void writeOne(PendingAccount pending) {
+        try {
+            Map<String, BillingAccount> accounts = transactionTemplate.execute(status -> save(List.of(pending)));
+            pending.future().complete(accounts.get(pending.patientId()));
+        } catch (Exception e) {
+            pending.future().completeExceptionally(e);
+        }
+    }
+
+    private Map<String, BillingAccount> save(List<PendingAccount> batch) {
+        Map<String, BillingAccount> accounts = new HashMap<>();
+        billingAccountRepository.findByPatientIdIn(batch.stream().map(PendingAccount::patientId).toList())
+                .forEach(account -> accounts.put(account.getPatientId(), account));
+
+        //computeIfAbsent also covers the same patient showing up twice in one batch
+        List<BillingAccount> created = new ArrayList<>();
+        for (PendingAccount pending : batch) {
+            accounts.computeIfAbsent(pending.patientId(), patientId -> {
+                BillingAccount account = new BillingAccount(patientId, pending.name(), pending.email());
+                created.add(account);
+                return account;
+            });
+        }
+        billingAccountRepository.saveAll(created);
+        log.debug("Saved {} billing accounts, {} already existed", created.size(), batch.size() - created.size());
+        return accounts;
+    }
+
+    private record PendingAccount(String patientId, String name, String email, CompletableFuture<BillingAccount> future) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.pm.billingservice.service;
+
+import com.pm.billingservice.model.BillingAccount;
+import com.pm.billingservice.repository.BillingAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//runs against the in memory h2 database, no grpc server needed
+@SpringBootTest
+@ActiveProfiles("test")
+class BillingAccountServiceTest {
+
+    @Autowired
+    private BillingAccountService billingAccountService;
+
+    @Autowired
+    private BillingAccountRepository billingAccountRepository;
+
+    @BeforeEach
+    void setUp() {
+        billingAccountRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentAccountsAreSavedWithUniqueIds() {
+        List<CompletableFuture<BillingAccount>> futures = IntStream.range(0, 1000)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> "patient-" + i)
+                        .thenCompose(patientId -> billingAccountService.createAccount(patientId, "Name", patientId + "@example.com")))
+                .toList();
+
+        Set<String> accountIds = futures.stream()
+                .map(CompletableFuture::join)
+                .map(account -> account.getId().toString())
+                .collect(Collectors.toSet());
+
+        assertEquals(1000, accountIds.size());
+        assertEquals(1000, billingAccountRepository.count());
+    }
+
+    @Test
+    void samePatientGetsTheSameAccount() {
+        //the first two land in the same group commit, the third one finds the saved account
+        CompletableFuture<BillingAccount> first = billingAccountService.createAccount("patient-1", "Name", "a@example.com");
+        CompletableFuture<BillingAccount> second = billingAccountService.createAccount("patient-1", "Name", "a@example.com");
+        BillingAccount account = first.join();
+        BillingAccount retried = billingAccountService.createAccount("patient-1", "Name", "a@example.com").join();
+
+        assertEquals(account.getId(), second.join().getId());
+        assertEquals(account.getId(), retried.getId());
+        assertEquals(1, billingAccountRepository.count());
+    }
+}
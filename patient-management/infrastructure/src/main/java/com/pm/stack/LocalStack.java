@@ -27,9 +27,11 @@ public class LocalStack extends Stack {
 
         DatabaseInstance authServiceDB = createDatabase("AuthServiceDB", "auth-service-db");
         DatabaseInstance patientServiceDB = createDatabase("PatientServiceDB", "patient-service-db");
+        DatabaseInstance billingServiceDB = createDatabase("BillingServiceDB", "billing-service-db");
 
         CfnHealthCheck authDBHealthCheck = createDBHealthCheck(authServiceDB, "authServiceDBHealthCheck");
         CfnHealthCheck patientDBHealthCheck = createDBHealthCheck(patientServiceDB, "patientServiceDBHealthCheck");
+        CfnHealthCheck billingDBHealthCheck = createDBHealthCheck(billingServiceDB, "billingServiceDBHealthCheck");
 
         CfnCluster mskCluster = createMSKCluster();
 
@@ -41,7 +43,9 @@ public class LocalStack extends Stack {
         authService.getNode().addDependency(authServiceDB);
 
         FargateService billingService = createFargateService("BillingService", "billing-service",
-                List.of(4001, 9001), null, null);
+                List.of(4001, 9001), billingServiceDB, null);
+        billingService.getNode().addDependency(billingServiceDB);
+        billingService.getNode().addDependency(billingDBHealthCheck);
 
         FargateService analyticsService = createFargateService("AnalyticsService", "analytics-service",
                 List.of(4002), null, null);
@@ -174,7 +178,7 @@ public class LocalStack extends Stack {
             envVars.putAll(additionalEnvVars);
         }
         if (db != null) {
-            envVars.put("SPRING_DATASOURCE_URL", "jdbc:postgresql://%s:%s/%s-db".formatted(
+            envVars.put("SPRING_DATASOURCE_URL", "jdbc:postgresql://%s:%s/%s-db?reWriteBatchedInserts=true".formatted(
                     db.getDbInstanceEndpointAddress(),
                     db.getDbInstanceEndpointPort(),
                     imageName
@@ -209,7 +213,8 @@ public class LocalStack extends Stack {
                 .image(ContainerImage.fromRegistry("api-gateway"))
                 .environment(Map.of(
                         "SPRING_PROFILES_ACTIVE", "prod",
-                        "AUTH_SERVICE_URL", "http://host.docker.internal:4005"
+                        "AUTH_SERVICE_URL", "http://host.docker.internal:4005",
+                        "JWT_SECRET", "aDKUgeZa9N8vPbJCmoVPKcpGwzREafsu9Jqr5xzlYKA"
                 ))
                 .portMappings(List.of(4004).stream()
                         .map(port -> PortMapping.builder()
@@ -0,0 +1,188 @@
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Open model load generator: a new iteration starts every 1/rate seconds whether or not the earlier ones are done,
+// so a slow system gets a growing queue instead of a politely slower client (closed model tools hide that)
+// Every iteration runs on its own virtual thread and records each step into a per endpoint HDR histogram
+public class ConstantArrivalRateLoad {
+    // 1 microsecond to 1 minute with 3 significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final double rate;
+    private final int maxInFlight;
+    private volatile long measureFrom;
+
+    public ConstantArrivalRateLoad(double rate, int maxInFlight, String... endpoints) {
+        this.rate = rate;
+        this.maxInFlight = maxInFlight;
+        for (String endpoint : endpoints) {
+            histograms.put(endpoint, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(endpoint, new LongAdder());
+        }
+    }
+
+    public interface Iteration {
+        void run(Steps steps) throws Exception;
+    }
+
+    // Handed to every iteration, times one request and files it under its endpoint
+    public class Steps {
+        private long nextStepStart;
+
+        private Steps(long intendedStart) {
+            this.nextStepStart = intendedStart;
+        }
+
+        public <T> T time(String endpoint, StepCall<T> call) throws Exception {
+            // the first step is timed from when the iteration should have started, not when it got a thread, so time
+            // spent queued behind a slow system counts against it (no coordinated omission)
+            long start = nextStepStart;
+            try {
+                T result = call.call();
+                record(endpoint, start);
+                return result;
+            } catch (Exception e) {
+                if (start >= measureFrom) {
+                    errors.get(endpoint).increment();
+                }
+                throw e;
+            } finally {
+                nextStepStart = System.nanoTime();
+            }
+        }
+    }
+
+    public interface StepCall<T> {
+        T call() throws Exception;
+    }
+
+    public Result run(Iteration iteration, long warmupSeconds, long durationSeconds) throws InterruptedException {
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong scheduled = new AtomicLong();
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        try (ExecutorService iterations = Executors.newVirtualThreadPerTaskExecutor()) {
+            ticker.scheduleAtFixedRate(() -> {
+                // the ticker can fall behind, catch up by starting every iteration that is due by now
+                long now = System.nanoTime();
+                while (true) {
+                    long intendedStart = start + scheduled.get() * periodNanos;
+                    if (intendedStart > now || intendedStart >= end) {
+                        break;
+                    }
+                    scheduled.incrementAndGet();
+                    // past maxInFlight the system is not keeping up, count the iteration as dropped instead of
+                    // growing threads without bound
+                    if (!inFlight.tryAcquire()) {
+                        if (intendedStart >= measureFrom) {
+                            dropped.increment();
+                        }
+                        continue;
+                    }
+                    iterations.submit(() -> {
+                        try {
+                            iteration.run(new Steps(intendedStart));
+                            if (intendedStart >= measureFrom) {
+                                completed.increment();
+                            }
+                        } catch (Exception e) {
+                            // already counted against the step that failed
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            }, 0, Math.max(1, periodNanos / 2), TimeUnit.NANOSECONDS);
+
+            TimeUnit.NANOSECONDS.sleep(end - System.nanoTime());
+            ticker.shutdownNow();
+            // closing the executor waits for the iterations still in flight
+        } finally {
+            ticker.shutdownNow();
+        }
+
+        return new Result(durationSeconds);
+    }
+
+    private void record(String endpoint, long start) {
+        if (start < measureFrom) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        histograms.get(endpoint).recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+    }
+
+    public class Result {
+        private final long durationSeconds;
+
+        private Result(long durationSeconds) {
+            this.durationSeconds = durationSeconds;
+        }
+
+        public double throughput() {
+            return completed.sum() / (double) durationSeconds;
+        }
+
+        public long dropped() {
+            return dropped.sum();
+        }
+
+        public double p99Millis(String endpoint) {
+            return histograms.get(endpoint).getValueAtPercentile(99.0) / 1000.0;
+        }
+
+        public long errors(String endpoint) {
+            return errors.get(endpoint).sum();
+        }
+
+        public long requests(String endpoint) {
+            return histograms.get(endpoint).getTotalCount() + errors(endpoint);
+        }
+
+        // one .hgrm file per endpoint, in milliseconds, can be plotted with the HdrHistogram plotter
+        public void writeHistograms(Path directory) throws IOException {
+            Files.createDirectories(directory);
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey() + ".hgrm")))) {
+                    entry.getValue().outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+
+        public void print(PrintStream out) {
+            out.printf("target %.1f/s, completed %.1f/s, dropped %d%n", rate, throughput(), dropped());
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                out.printf("%-8s n=%-7d p50=%8.1fms p90=%8.1fms p99=%8.1fms max=%8.1fms errors=%d%n", entry.getKey(),
+                        histogram.getTotalCount(),
+                        histogram.getValueAtPercentile(50.0) / 1000.0,
+                        histogram.getValueAtPercentile(90.0) / 1000.0,
+                        histogram.getValueAtPercentile(99.0) / 1000.0,
+                        histogram.getMaxValue() / 1000.0,
+                        errors(entry.getKey()));
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Load test of the login -> list -> create -> update flow through the gateway, skipped in the normal build
+// Start the stack first, then:
+//   mvn test -Dtest=PatientFlowLoadTest -Dload.test=true
+// It runs at the rate stored in load-test-baseline.properties and fails when throughput drops or any endpoint's p99
+// gets worse than the baseline by more than load.test.tolerance
+// After an intended change in performance, write the new numbers into the baseline with -Dload.test.update-baseline=true
+@EnabledIfSystemProperty(named = "load.test", matches = "true")
+public class PatientFlowLoadTest {
+    private static final String BASE_URL = System.getProperty("load.test.base-url", "http://localhost:4004");
+    private static final Path BASELINE_FILE = Path.of("src/test/resources/load-test-baseline.properties");
+    private static final String[] ENDPOINTS = {"login", "list", "create", "update"};
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @Test
+    public void patientFlowShouldNotRegressAgainstBaseline() throws Exception {
+        Properties baseline = loadBaseline();
+        double rate = Double.parseDouble(System.getProperty("load.test.rate", baseline.getProperty("rate")));
+        long warmupSeconds = Long.getLong("load.test.warmup-seconds", 10);
+        long durationSeconds = Long.getLong("load.test.duration-seconds", 60);
+        double tolerance = Double.parseDouble(System.getProperty("load.test.tolerance", "0.2"));
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.test.max-error-rate", "0.01"));
+
+        ConstantArrivalRateLoad load = new ConstantArrivalRateLoad(rate,
+                Integer.getInteger("load.test.max-in-flight", 1000), ENDPOINTS);
+        ConstantArrivalRateLoad.Result result = load.run(this::patientFlow, warmupSeconds, durationSeconds);
+        result.print(System.out);
+        result.writeHistograms(Path.of("target/load-test"));
+
+        if (Boolean.getBoolean("load.test.update-baseline")) {
+            saveBaseline(rate, result);
+            return;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        double minThroughput = Double.parseDouble(baseline.getProperty("throughput")) * (1 - tolerance);
+        if (result.throughput() < minThroughput) {
+            regressions.add("throughput %.1f/s is below %.1f/s".formatted(result.throughput(), minThroughput));
+        }
+        for (String endpoint : ENDPOINTS) {
+            double maxP99 = Double.parseDouble(baseline.getProperty(endpoint + ".p99-ms")) * (1 + tolerance);
+            if (result.p99Millis(endpoint) > maxP99) {
+                regressions.add("%s p99 %.1fms is above %.1fms".formatted(endpoint, result.p99Millis(endpoint), maxP99));
+            }
+            long requests = result.requests(endpoint);
+            if (requests > 0 && result.errors(endpoint) > requests * maxErrorRate) {
+                regressions.add("%s failed %d of %d requests".formatted(endpoint, result.errors(endpoint), requests));
+            }
+        }
+        assertTrue(regressions.isEmpty(), "Load test regressed against " + BASELINE_FILE + ": " + regressions);
+    }
+
+    // one user session, every step has to succeed before the next one runs
+    private void patientFlow(ConstantArrivalRateLoad.Steps steps) throws Exception {
+        String token = steps.time("login", () -> field(TOKEN, send(post("/auth/login", null, """
+                {
+                    "email" : "testuser@test.com",
+                    "password" : "password123"
+                }
+                """))));
+
+        steps.time("list", () -> send(HttpRequest.newBuilder(uri("/api/patients?size=20"))
+                .header("Authorization", "Bearer " + token)
+                .GET()));
+
+        String email = "load-" + UUID.randomUUID() + "@test.com";
+        String patientId = steps.time("create", () -> field(ID, send(post("/api/patients", token, """
+                {
+                    "name" : "Load Test",
+                    "email" : "%s",
+                    "address" : "1 Load Street",
+                    "dateOfBirth" : "1990-01-01",
+                    "registeredDate" : "2024-01-01"
+                }
+                """.formatted(email)))));
+
+        steps.time("update", () -> send(HttpRequest.newBuilder(uri("/api/patients/" + patientId))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("""
+                        {
+                            "name" : "Load Test Updated",
+                            "email" : "%s",
+                            "address" : "2 Load Street",
+                            "dateOfBirth" : "1990-01-01"
+                        }
+                        """.formatted(email)))));
+    }
+
+    private HttpRequest.Builder post(String path, String token, String body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request;
+    }
+
+    // anything but a 2xx is counted as an error for the step
+    private String send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(request.build().uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    // a regex instead of a json parser, so the client spends as little cpu per request as possible
+    private static String field(Pattern pattern, String body) throws IOException {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IOException("Unexpected response: " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static URI uri(String path) {
+        return URI.create(BASE_URL + path);
+    }
+
+    private static Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(BASELINE_FILE)) {
+            baseline.load(in);
+        }
+        return baseline;
+    }
+
+    private static void saveBaseline(double rate, ConstantArrivalRateLoad.Result result) throws IOException {
+        Properties baseline = new Properties();
+        baseline.setProperty("rate", String.valueOf(rate));
+        baseline.setProperty("throughput", "%.1f".formatted(result.throughput()));
+        for (String endpoint : ENDPOINTS) {
+            baseline.setProperty(endpoint + ".p99-ms", "%.1f".formatted(result.p99Millis(endpoint)));
+        }
+        try (OutputStream out = Files.newOutputStream(BASELINE_FILE)) {
+            baseline.store(out, "Written by PatientFlowLoadTest with -Dload.test.update-baseline=true");
+        }
+        System.out.println("Baseline written to " + BASELINE_FILE.toAbsolutePath());
+    }
+}
@@ -0,0 +1,106 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+//Bloom filter over every patient email, so creates and updates with an email we have never seen can skip the
+//existsByEmail query. It can only answer "definitely new" or "maybe taken", a "maybe" still goes to postgres and
+//the unique constraint on Patient.email stays the source of truth (other replicas' new emails are not in our filter)
+//Deleted emails are never removed, they only make the filter a bit less useful until the next restart
+@Component
+public class EmailBloomFilter {
+    private static final Logger log = LoggerFactory.getLogger(EmailBloomFilter.class);
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final PatientRepository patientRepository;
+    private final TransactionTemplate transactionTemplate;
+    //until the filter is loaded every email is a "maybe", so we fall back to the query
+    private volatile boolean warmedUp;
+
+    public EmailBloomFilter(PatientRepository patientRepository, TransactionTemplate transactionTemplate,
+                            @Value("${patient.email-filter.expected-emails:1000000}") long expectedEmails,
+                            @Value("${patient.email-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.patientRepository = patientRepository;
+        this.transactionTemplate = transactionTemplate;
+        //standard bloom filter sizing, about 1.2MB and 7 hashes for a million emails at 1%
+        long optimalBits = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, optimalBits);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+    }
+
+    //runs once the app is up, requests that come in before it finishes just use the query
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        LongAdder count = new LongAdder();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<String> emails = patientRepository.streamAllEmails()) {
+                emails.forEach(email -> {
+                    add(email);
+                    count.increment();
+                });
+            }
+        });
+        warmedUp = true;
+        log.info("Loaded {} patient emails into the email filter in {}ms", count.sum(), System.currentTimeMillis() - start);
+    }
+
+    public void add(String email) {
+        long hash1 = hash(email, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(email, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(index);
+            } while ((current & mask) == 0 && !bits.compareAndSet(index, current, current | mask));
+        }
+    }
+
+    //false means no patient has this email (as far as this node knows), true means we have to ask the database
+    public boolean mightContain(String email) {
+        if (!warmedUp) {
+            return true;
+        }
+        long hash1 = hash(email, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(email, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //FNV-1a over the utf-8 bytes with a different seed per hash, finished with the murmur3 mixer to spread the bits
+    private static long hash(String email, long seed) {
+        long hash = seed;
+        for (byte b : email.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE1A85EC5L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,202 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.dto.PatientSearchResultDTO;
+import com.pm.patientservice.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+//In memory prefix index of patient name tokens for type-ahead, so autocomplete never queries postgres
+//"Mary-Jane O'Neil" is indexed under "mary", "jane", "o" and "neil" (lowercased, accents removed), and a search for
+//"jane o" returns patients that have a token starting with "jane" and a token starting with "o"
+//Reads are lock free, writes are rare compared to keystrokes so they simply take a lock (a ReentrantLock rather than
+//synchronized so a virtual thread waiting for it is not pinned to its carrier thread)
+@Component
+public class PatientNameIndex {
+    private static final Logger log = LoggerFactory.getLogger(PatientNameIndex.class);
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    //token -> ids of the patients whose name has that token, sorted so a prefix is one contiguous range
+    private final NavigableMap<String, Set<UUID>> patientIdsByToken = new ConcurrentSkipListMap<>();
+    private final Map<UUID, IndexedPatient> patientsById = new ConcurrentHashMap<>();
+    private final PatientRepository patientRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    //ids put or removed by a live change while warmUp is reading the snapshot, their snapshot row may already be stale
+    private Set<UUID> changedDuringWarmUp;
+
+    public PatientNameIndex(PatientRepository patientRepository, TransactionTemplate transactionTemplate) {
+        this.patientRepository = patientRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    //Called once on startup by PatientNameIndexConsumer, before it starts following the patient topic
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        LongAdder count = new LongAdder();
+        setChangedDuringWarmUp(ConcurrentHashMap.newKeySet());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<PatientSearchResultDTO> patients = patientRepository.streamAllSearchResults()) {
+                    patients.forEach(patient -> {
+                        putFromSnapshot(UUID.fromString(patient.getId()), patient.getName(), patient.getEmail());
+                        count.increment();
+                    });
+                }
+            });
+        } finally {
+            setChangedDuringWarmUp(null);
+        }
+        log.info("Indexed {} patient names for autocomplete in {}ms", count.sum(), System.currentTimeMillis() - start);
+    }
+
+    public void put(UUID id, String name, String email) {
+        writeLock.lock();
+        try {
+            markChanged(id);
+            putTokens(id, name, email);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //a patient updated or deleted after the snapshot query started keeps what the live change left
+    private void putFromSnapshot(UUID id, String name, String email) {
+        writeLock.lock();
+        try {
+            if (!changedDuringWarmUp.contains(id)) {
+                putTokens(id, name, email);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void putTokens(UUID id, String name, String email) {
+        removeTokens(id);
+        IndexedPatient patient = new IndexedPatient(name, email, tokenize(name));
+        patientsById.put(id, patient);
+        for (String token : patient.tokens()) {
+            patientIdsByToken.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    public void remove(UUID id) {
+        writeLock.lock();
+        try {
+            markChanged(id);
+            removeTokens(id);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void markChanged(UUID id) {
+        if (changedDuringWarmUp != null) {
+            changedDuringWarmUp.add(id);
+        }
+    }
+
+    private void setChangedDuringWarmUp(Set<UUID> ids) {
+        writeLock.lock();
+        try {
+            changedDuringWarmUp = ids;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void removeTokens(UUID id) {
+        IndexedPatient patient = patientsById.remove(id);
+        if (patient == null) {
+            return;
+        }
+        for (String token : patient.tokens()) {
+            Set<UUID> ids = patientIdsByToken.get(token);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    patientIdsByToken.remove(token);
+                }
+            }
+        }
+    }
+
+    public IndexedPatient get(UUID id) {
+        return patientsById.get(id);
+    }
+
+    //walks the tokens starting with the first query token in order and stops as soon as it has limit matches
+    public List<PatientSearchResultDTO> autocomplete(String query, int limit) {
+        String[] queryTokens = tokenize(query);
+        if (queryTokens.length == 0) {
+            return List.of();
+        }
+        String firstToken = queryTokens[0];
+        String[] otherTokens = Arrays.copyOfRange(queryTokens, 1, queryTokens.length);
+
+        Set<UUID> matches = new LinkedHashSet<>();
+        for (Set<UUID> ids : patientIdsByToken.subMap(firstToken, true, firstToken + Character.MAX_VALUE, false).values()) {
+            for (UUID id : ids) {
+                IndexedPatient patient = patientsById.get(id);
+                if (patient != null && patient.matchesAll(otherTokens)) {
+                    matches.add(id);
+                    if (matches.size() == limit) {
+                        return toResults(matches);
+                    }
+                }
+            }
+        }
+        return toResults(matches);
+    }
+
+    private List<PatientSearchResultDTO> toResults(Set<UUID> ids) {
+        List<PatientSearchResultDTO> results = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            IndexedPatient patient = patientsById.get(id);
+            if (patient != null) {
+                results.add(new PatientSearchResultDTO(id, patient.name(), patient.email()));
+            }
+        }
+        return results;
+    }
+
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String normalized = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return TOKEN_SEPARATOR.splitAsStream(normalized).filter(token -> !token.isEmpty()).distinct().toArray(String[]::new);
+    }
+
+    public record IndexedPatient(String name, String email, String[] tokens) {
+        private boolean matchesAll(String[] prefixes) {
+            for (String prefix : prefixes) {
+                if (Arrays.stream(tokens).noneMatch(token -> token.startsWith(prefix))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.pm.patientservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    //PatientResponseDTOs by patient id, so hot patient records are served from memory instead of postgres
+    public static final String PATIENT_CACHE = "patients";
+
+    @Bean
+    public CacheManager cacheManager(@Value("${patient.cache.spec:maximumSize=10000,expireAfterWrite=5m}") String spec) {
+        CaffeineCacheManager caffeineCacheManager = new CaffeineCacheManager(PATIENT_CACHE);
+        caffeineCacheManager.setCacheSpecification(spec);
+        //evictions made inside a transaction only happen after it commits, otherwise a read running at the same time
+        //could put the old row straight back into the cache
+        return new TransactionAwareCacheManagerProxy(caffeineCacheManager);
+    }
+}
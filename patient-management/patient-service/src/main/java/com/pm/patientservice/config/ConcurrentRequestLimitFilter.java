@@ -0,0 +1,45 @@
+package com.pm.patientservice.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+//With platform threads tomcat's 200 thread pool is what stops us taking on more work than we can finish.
+//Virtual threads have no such limit, under overload every request starts at once, they all share the cpu and all of
+//them run past the billing grpc deadline. This puts a limit back, but a request waiting here only parks a cheap
+//virtual thread instead of holding one of 200 platform threads
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class ConcurrentRequestLimitFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+
+    public ConcurrentRequestLimitFilter(@Value("${patient.virtual-threads.max-concurrent-requests:200}") int maxConcurrentRequests) {
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
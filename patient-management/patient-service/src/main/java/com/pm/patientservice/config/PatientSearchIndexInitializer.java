@@ -0,0 +1,42 @@
+package com.pm.patientservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+//The search indexes are postgres only (pg_trgm and expression indexes), so they cannot go in data.sql which also runs on h2,
+//and data-postgresql.sql would run before data.sql has created the patient table
+//On h2 the search queries still work, just without these indexes
+@Component
+public class PatientSearchIndexInitializer {
+    private static final Logger log = LoggerFactory.getLogger(PatientSearchIndexInitializer.class);
+
+    private final DataSource dataSource;
+
+    public PatientSearchIndexInitializer(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createSearchIndexes() {
+        try {
+            String database = JdbcUtils.extractDatabaseMetaData(dataSource, "getDatabaseProductName");
+            if (!"PostgreSQL".equals(database)) {
+                log.info("Skipping patient search indexes on {}", database);
+                return;
+            }
+            //CONCURRENTLY so building them on a big table does not block writes, the statements run in autocommit
+            new ResourceDatabasePopulator(new ClassPathResource("db/patient-search-indexes-postgresql.sql")).execute(dataSource);
+        } catch (Exception e) {
+            //search still works without them, it is just slower
+            log.error("Could not create patient search indexes: {}", e.getMessage());
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package com.pm.patientservice.controller;
 
+import com.pm.patientservice.dto.PatientImportResultDTO;
+import com.pm.patientservice.dto.PatientPageResponseDTO;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.dto.PatientSearchResponseDTO;
+import com.pm.patientservice.dto.PatientSearchResultDTO;
 import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
+import com.pm.patientservice.exception.InvalidImportFileException;
+import com.pm.patientservice.mapper.PatientCsvMapper;
+import com.pm.patientservice.service.PatientExportService;
+import com.pm.patientservice.service.PatientImportService;
 import com.pm.patientservice.service.PatientService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import jakarta.validation.groups.Default;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,17 +36,62 @@ import java.util.UUID;
 @Tag(name = "Patient", description = "API for managing Patients")
 public class PatientController {
     private final PatientService patientService;
+    private final PatientExportService patientExportService;
+    private final PatientImportService patientImportService;
 
     //Dependency injection
-    public PatientController(PatientService patientService) {
+    public PatientController(PatientService patientService, PatientExportService patientExportService,
+                             PatientImportService patientImportService) {
         this.patientService = patientService;
+        this.patientExportService = patientExportService;
+        this.patientImportService = patientImportService;
     }
 
     @GetMapping         //Tells spring that method that we are about to create is to handle any get requests
     @Operation(summary = "Get Patients")    //we need to do this to appear on Swagger UI under patients tag as we have already annotated with GetMapping, it will display on the UI
-    public ResponseEntity<List<PatientResponseDTO>> getPatients() {   //Spring object that creates a HTTP response without us having to do much of the code ourselves and lets us set properties on the response quite easily
-        List<PatientResponseDTO> patients = patientService.getPatients();
-        return ResponseEntity.ok().body(patients);    //ok() means will be returning the status code 200 and returns the whole list of patients to the body
+    public ResponseEntity<PatientPageResponseDTO> getPatients(   //Spring object that creates a HTTP response without us having to do much of the code ourselves and lets us set properties on the response quite easily
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        //cursor is the nextCursor from the previous page, leave it out to start from the first page
+        PatientPageResponseDTO patients = patientService.getPatients(cursor, size);
+        return ResponseEntity.ok().body(patients);    //ok() means will be returning the status code 200 and returns one page of patients to the body
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Search Patients by name or email")
+    public ResponseEntity<PatientSearchResponseDTO> searchPatients(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size) {
+        //q can be any part of the name or email, page starts at 0 and nextPage in the response is the one to ask for next
+        PatientSearchResponseDTO patients = patientService.searchPatients(q, page, size);
+        return ResponseEntity.ok().body(patients);
+    }
+
+    @GetMapping("/autocomplete")
+    @Operation(summary = "Autocomplete Patient names")
+    public ResponseEntity<List<PatientSearchResultDTO>> autocompletePatients(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit) {
+        //served from memory, meant to be called on every keystroke
+        List<PatientSearchResultDTO> patients = patientService.autocompletePatients(q, limit);
+        return ResponseEntity.ok().body(patients);
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "Get a Patient")
+    public ResponseEntity<PatientResponseDTO> getPatient(@PathVariable UUID id) {
+        PatientResponseDTO patientResponseDTO = patientService.getPatient(id);
+        return ResponseEntity.ok().body(patientResponseDTO);
+    }
+
+    //Streams every patient as one json object per line, used by the nightly reconciliation job
+    //The body is written on a separate thread as the rows are read so memory does not grow with the number of patients
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Export all Patients as NDJSON")
+    public ResponseEntity<StreamingResponseBody> exportPatients() {
+        StreamingResponseBody body = patientExportService::exportPatients;
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
     }
 
     @PostMapping
@@ -43,6 +104,34 @@ public class PatientController {
         return ResponseEntity.ok().body(patientResponseDTO);
     }
 
+    //Bulk create for migrations, every row gets its own result so one bad row does not fail the whole upload
+    //The json array is read into memory by jackson, use the csv version below for very large files
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Import Patients from a JSON array")
+    public ResponseEntity<PatientImportResultDTO> importPatients(
+            @RequestBody List<PatientRequestDTO> patientRequestDTOs) {
+        PatientImportResultDTO result = patientImportService.importPatients(patientRequestDTOs.iterator());
+        return ResponseEntity.ok().body(result);
+    }
+
+    //The csv body is read line by line while we import, so the file size is not limited by memory
+    //The first line must be the header: name,email,address,dateOfBirth,registeredDate
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @Operation(summary = "Import Patients from a CSV upload")
+    public ResponseEntity<PatientImportResultDTO> importPatientsCsv(InputStream body) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null || !header.trim().equalsIgnoreCase(PatientCsvMapper.HEADER)) {
+                throw new InvalidImportFileException("CSV header must be " + PatientCsvMapper.HEADER);
+            }
+            Iterator<PatientRequestDTO> rows = reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .map(PatientCsvMapper::toDTO)
+                    .iterator();
+            return ResponseEntity.ok().body(patientImportService.importPatients(rows));
+        }
+    }
+
     //localhost:4000/patients/12312312-123123123-12312312
     //12312312-123123123-12312312 - takes this part and convert it to ID variable and pass variable to update patient which handles the request
     @PutMapping("/{id}")
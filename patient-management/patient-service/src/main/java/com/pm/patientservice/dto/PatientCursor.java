@@ -0,0 +1,52 @@
+package com.pm.patientservice.dto;
+
+import com.pm.patientservice.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.UUID;
+
+//Keyset cursor for walking the patient table ordered by (registeredDate, id)
+//It is sent to the client as an opaque base64 string so clients cannot depend on what is inside it
+public class PatientCursor {
+    private static final String SEPARATOR = "|";
+
+    private final LocalDate registeredDate;
+    private final UUID id;
+
+    public PatientCursor(LocalDate registeredDate, UUID id) {
+        this.registeredDate = registeredDate;
+        this.id = id;
+    }
+
+    public static PatientCursor from(PatientResponseDTO patient) {
+        return new PatientCursor(patient.getRegisteredDate(), UUID.fromString(patient.getId()));
+    }
+
+    public String encode() {
+        String raw = registeredDate + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PatientCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            return new PatientCursor(
+                    LocalDate.parse(raw.substring(0, separatorIndex)),
+                    UUID.fromString(raw.substring(separatorIndex + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public LocalDate getRegisteredDate() {
+        return registeredDate;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+}
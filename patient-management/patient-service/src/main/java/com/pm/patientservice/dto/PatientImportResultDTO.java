@@ -0,0 +1,41 @@
+package com.pm.patientservice.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PatientImportResultDTO {
+    private int created;
+    private int failed;
+    private int billingFailed;
+    private List<PatientImportRowResultDTO> rows = new ArrayList<>();
+
+    public void addCreated(int row, String id) {
+        created++;
+        rows.add(new PatientImportRowResultDTO(row, "CREATED", id, null));
+    }
+
+    public void addFailed(int row, String status, String message) {
+        failed++;
+        rows.add(new PatientImportRowResultDTO(row, status, null, message));
+    }
+
+    public void addBillingFailed(int count) {
+        billingFailed += count;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getBillingFailed() {
+        return billingFailed;
+    }
+
+    public List<PatientImportRowResultDTO> getRows() {
+        return rows;
+    }
+}
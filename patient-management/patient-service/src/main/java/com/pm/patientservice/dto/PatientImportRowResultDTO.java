@@ -0,0 +1,48 @@
+package com.pm.patientservice.dto;
+
+public class PatientImportRowResultDTO {
+    //1 based position of the row in the uploaded array or csv (not counting the csv header)
+    private int row;
+    private String status;
+    private String id;
+    private String message;
+
+    public PatientImportRowResultDTO(int row, String status, String id, String message) {
+        this.row = row;
+        this.status = status;
+        this.id = id;
+        this.message = message;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public void setRow(int row) {
+        this.row = row;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
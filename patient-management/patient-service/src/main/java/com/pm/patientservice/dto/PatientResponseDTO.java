@@ -1,5 +1,10 @@
 package com.pm.patientservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
 public class PatientResponseDTO {
     private String id;
     private String name;
@@ -8,6 +13,23 @@ public class PatientResponseDTO {
     private String dateOfBirth;
     //    we only store the register date just for auditing reason and there is no reason
     //    this to the frontend
+    //    it is only kept here so the list queries can build the next page cursor without loading the entity
+    @JsonIgnore
+    private LocalDate registeredDate;
+
+    public PatientResponseDTO() {
+    }
+
+    //used by the JPQL constructor expressions in PatientRepository, so list reads never create managed Patient entities
+    public PatientResponseDTO(UUID id, String name, String email, String address, LocalDate dateOfBirth,
+                              LocalDate registeredDate) {
+        this.id = id.toString();
+        this.name = name;
+        this.email = email;
+        this.address = address;
+        this.dateOfBirth = dateOfBirth.toString();
+        this.registeredDate = registeredDate;
+    }
 
     public String getId() {
         return id;
@@ -49,6 +71,14 @@ public class PatientResponseDTO {
         this.dateOfBirth = datOfBirth;
     }
 
+    public LocalDate getRegisteredDate() {
+        return registeredDate;
+    }
+
+    public void setRegisteredDate(LocalDate registeredDate) {
+        this.registeredDate = registeredDate;
+    }
+
     private String datOfBirth;
 
 }
@@ -0,0 +1,30 @@
+package com.pm.patientservice.dto;
+
+import java.util.List;
+
+public class PatientSearchResponseDTO {
+    private List<PatientSearchResultDTO> patients;
+    //null when there are no more matches
+    private Integer nextPage;
+
+    public PatientSearchResponseDTO(List<PatientSearchResultDTO> patients, Integer nextPage) {
+        this.patients = patients;
+        this.nextPage = nextPage;
+    }
+
+    public List<PatientSearchResultDTO> getPatients() {
+        return patients;
+    }
+
+    public void setPatients(List<PatientSearchResultDTO> patients) {
+        this.patients = patients;
+    }
+
+    public Integer getNextPage() {
+        return nextPage;
+    }
+
+    public void setNextPage(Integer nextPage) {
+        this.nextPage = nextPage;
+    }
+}
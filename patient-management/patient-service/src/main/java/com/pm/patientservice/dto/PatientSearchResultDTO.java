@@ -0,0 +1,40 @@
+package com.pm.patientservice.dto;
+
+import java.util.UUID;
+
+//Only what a search result list shows, filled straight from the query so no Patient entities are loaded
+public class PatientSearchResultDTO {
+    private String id;
+    private String name;
+    private String email;
+
+    public PatientSearchResultDTO(UUID id, String name, String email) {
+        this.id = id.toString();
+        this.name = name;
+        this.email = email;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+}
@@ -0,0 +1,148 @@
+package com.pm.patientservice.grpc;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import billing.BillingServiceGrpc;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Collects billing requests for a short window and sends each window as one CreateBillingAccounts stream
+//so a burst of new patients costs one round trip per batch instead of one per patient
+class BillingAccountBatcher {
+    private static final Logger log = LoggerFactory.getLogger(BillingAccountBatcher.class);
+
+    private final BillingServiceGrpc.BillingServiceStub asyncStub;
+    private final long deadlineMs;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "billing-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    BillingAccountBatcher(BillingServiceGrpc.BillingServiceStub asyncStub, long deadlineMs, long windowMs, int maxBatchSize) {
+        this.asyncStub = asyncStub;
+        this.deadlineMs = deadlineMs;
+        this.maxBatchSize = maxBatchSize;
+        flusher.scheduleWithFixedDelay(this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    CompletableFuture<BillingResponse> submit(BillingRequest request) {
+        PendingRequest pending = new PendingRequest(request, new CompletableFuture<>());
+        queue.add(pending);
+        //no point waiting for the window to end if we already have a full batch
+        if (queue.size() >= maxBatchSize) {
+            flusher.execute(this::flush);
+        }
+        return pending.future();
+    }
+
+    void shutdown() {
+        flusher.shutdown();
+    }
+
+    private void flush() {
+        while (!queue.isEmpty()) {
+            List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+            queue.drainTo(batch, maxBatchSize);
+            if (!batch.isEmpty()) {
+                send(batch);
+            }
+        }
+    }
+
+    private void send(List<PendingRequest> batch) {
+        List<CompletableFuture<BillingResponse>> responses =
+                stream(asyncStub, deadlineMs, batch.stream().map(PendingRequest::request).toList());
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<BillingResponse> caller = batch.get(i).future();
+            responses.get(i).whenComplete((response, e) -> {
+                if (e != null) {
+                    caller.completeExceptionally(e);
+                } else {
+                    caller.complete(response);
+                }
+            });
+        }
+    }
+
+    //Sends every request over one CreateBillingAccounts stream, the returned futures are in the same order as the requests
+    static List<CompletableFuture<BillingResponse>> stream(BillingServiceGrpc.BillingServiceStub asyncStub, long deadlineMs,
+                                                           List<BillingRequest> requests) {
+        //responses are matched back to their callers by patient id, a patient only ever gets one account so the first
+        //response for an id completes every request for it (the same id can be in the list more than once)
+        List<CompletableFuture<BillingResponse>> futures = new ArrayList<>(requests.size());
+        //concurrent map rather than synchronized blocks, these callbacks can run on virtual threads and a monitor would pin them
+        Map<String, List<CompletableFuture<BillingResponse>>> waiting = new ConcurrentHashMap<>();
+        for (BillingRequest request : requests) {
+            CompletableFuture<BillingResponse> future = new CompletableFuture<>();
+            futures.add(future);
+            waiting.computeIfAbsent(request.getPatientId(), id -> new ArrayList<>()).add(future);
+        }
+        Iterator<BillingRequest> toSend = requests.iterator();
+
+        asyncStub.withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS)
+                .createBillingAccounts(new ClientResponseObserver<BillingRequest, BillingResponse>() {
+                    private boolean halfClosed;
+
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<BillingRequest> requestStream) {
+                        //only write while the transport says it is ready so we respect the server's flow control
+                        requestStream.setOnReadyHandler(() -> {
+                            while (requestStream.isReady() && toSend.hasNext()) {
+                                requestStream.onNext(toSend.next());
+                            }
+                            if (!toSend.hasNext() && !halfClosed) {
+                                halfClosed = true;
+                                requestStream.onCompleted();
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onNext(BillingResponse response) {
+                        List<CompletableFuture<BillingResponse>> callers = waiting.remove(response.getPatientId());
+                        if (callers != null) {
+                            callers.forEach(future -> future.complete(response));
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        log.error("CreateBillingAccounts batch of {} failed: {}", requests.size(), t.getMessage());
+                        failRemaining(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        failRemaining(Status.INTERNAL
+                                .withDescription("No billing response for patient")
+                                .asRuntimeException());
+                    }
+
+                    private void failRemaining(Throwable t) {
+                        waiting.values().forEach(callers -> callers.forEach(future -> future.completeExceptionally(t)));
+                        waiting.clear();
+                    }
+                });
+        return futures;
+    }
+
+    private record PendingRequest(BillingRequest request, CompletableFuture<BillingResponse> future) {
+    }
+}
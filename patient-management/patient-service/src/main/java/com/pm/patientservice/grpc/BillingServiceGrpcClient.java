@@ -3,36 +3,199 @@ package com.pm.patientservice.grpc;
 import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
+import com.pm.patientservice.logging.LogSampler;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.grpc.ObservationGrpcClientInterceptor;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class BillingServiceGrpcClient {
     private static final Logger log = LoggerFactory.getLogger(BillingServiceGrpcClient.class);
     private final BillingServiceGrpc.BillingServiceBlockingStub blockingStub;
+    private final BillingServiceGrpc.BillingServiceStub asyncStub;
+    private final long deadlineMs;
+    //caps how many async calls can be waiting on billing at once so a stalled billing service cannot pile up unbounded work
+    private final Semaphore inFlight;
+    //null when batching is turned off and every async call is its own unary rpc
+    private final BillingAccountBatcher batcher;
+    private final MeterRegistry meterRegistry;
+    private final LogSampler payloadLogSampler;
 
     //localhost:9001/BillingService/CreatePatientAccount
     //aws.grpc:123123/BillingService/CreatePatientAccount
     public BillingServiceGrpcClient(
         @Value("${billing.service.address:localhost}") String serverAddress,
-        @Value("${billing.service.grpc.port:9001}") int serverPort
+        @Value("${billing.service.grpc.port:9001}") int serverPort,
+        @Value("${billing.service.grpc.deadline-ms:2000}") long deadlineMs,
+        @Value("${billing.service.grpc.max-in-flight:100}") int maxInFlight,
+        @Value("${billing.service.grpc.retry.max-attempts:3}") int retryMaxAttempts,
+        @Value("${billing.service.grpc.retry.initial-backoff-ms:100}") long retryInitialBackoffMs,
+        @Value("${billing.service.grpc.retry.max-backoff-ms:1000}") long retryMaxBackoffMs,
+        @Value("${billing.service.grpc.batch.enabled:false}") boolean batchEnabled,
+        @Value("${billing.service.grpc.batch.window-ms:10}") long batchWindowMs,
+        @Value("${billing.service.grpc.batch.max-size:500}") int batchMaxSize,
+        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+        @Value("${log.payload.sample-rate:100}") int payloadLogSampleRate,
+        MeterRegistry meterRegistry,
+        ObservationRegistry observationRegistry
     ){
         log.info("Connecting to Billing Service GRPC service at {}:{}", serverAddress, serverPort);
 
-        ManagedChannel channel = ManagedChannelBuilder.forAddress(serverAddress, serverPort).usePlaintext().build();
+        ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress(serverAddress, serverPort)
+                .usePlaintext()
+                .defaultServiceConfig(retryServiceConfig(retryMaxAttempts, retryInitialBackoffMs, retryMaxBackoffMs))
+                .enableRetry()
+                //a client span per call, and the trace context goes to billing-service in the grpc metadata
+                //batched calls are sent from the batcher's thread, so they start a trace of their own
+                .intercept(new ObservationGrpcClientInterceptor(observationRegistry));
+        if(virtualThreads){
+            //response callbacks run on virtual threads too instead of grpc's default cached platform thread pool
+            channelBuilder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        ManagedChannel channel = channelBuilder.build();
 
         blockingStub = BillingServiceGrpc.newBlockingStub(channel);
+        asyncStub = BillingServiceGrpc.newStub(channel);
+        this.deadlineMs = deadlineMs;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.batcher = batchEnabled
+                ? new BillingAccountBatcher(asyncStub, deadlineMs, batchWindowMs, batchMaxSize)
+                : null;
+        this.meterRegistry = meterRegistry;
+        this.payloadLogSampler = new LogSampler(payloadLogSampleRate);
     }
 
     public BillingResponse createBillingAccount(String patientId, String name, String email){
         BillingRequest request = BillingRequest.newBuilder().setPatientId(patientId).setName(name).setEmail(email).build();
 
-        BillingResponse response = blockingStub.createBillingAccount(request);
-        log.info("Received response from billing service via GRPC: {}", response);
-        return response;
+        //the deadline covers every retry attempt, so the request thread is never held longer than deadlineMs
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            BillingResponse response = blockingStub.withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS)
+                    .createBillingAccount(request);
+            record(sample, "blocking", null);
+            logResponse(response);
+            return response;
+        } catch (StatusRuntimeException e) {
+            record(sample, "blocking", e);
+            throw e;
+        }
+    }
+
+    //Non blocking version, the calling thread returns straight away and the future completes on a grpc thread
+    public CompletableFuture<BillingResponse> createBillingAccountAsync(String patientId, String name, String email){
+        Timer.Sample sample = Timer.start(meterRegistry);
+        if(!inFlight.tryAcquire()){
+            StatusRuntimeException rejected = Status.RESOURCE_EXHAUSTED
+                    .withDescription("Too many billing requests in flight")
+                    .asRuntimeException();
+            record(sample, "async", rejected);
+            return CompletableFuture.failedFuture(rejected);
+        }
+
+        BillingRequest request = BillingRequest.newBuilder().setPatientId(patientId).setName(name).setEmail(email).build();
+        if(batcher != null){
+            //includes the time spent waiting for the batch window to close
+            return batcher.submit(request).whenComplete((response, e) -> {
+                inFlight.release();
+                record(sample, "batched", e);
+            });
+        }
+
+        CompletableFuture<BillingResponse> future = new CompletableFuture<>();
+        asyncStub.withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS)
+                .createBillingAccount(request, new StreamObserver<>() {
+                    @Override
+                    public void onNext(BillingResponse response) {
+                        logResponse(response);
+                        record(sample, "async", null);
+                        future.complete(response);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        inFlight.release();
+                        record(sample, "async", t);
+                        future.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        inFlight.release();
+                    }
+                });
+        return future;
+    }
+
+    //Bulk version for imports, every request goes over one CreateBillingAccounts stream instead of one rpc each
+    //This does not count against max-in-flight because the caller already waits for the whole batch
+    public List<CompletableFuture<BillingResponse>> createBillingAccounts(List<BillingRequest> requests){
+        return BillingAccountBatcher.stream(asyncStub, deadlineMs, requests);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        if(batcher != null){
+            batcher.shutdown();
+        }
+    }
+
+    //only the ids for every call (at debug), the whole response for a sample of them
+    private void logResponse(BillingResponse response) {
+        log.debug("Billing account {} created for patient {}", response.getAccountId(), response.getPatientId());
+        if (payloadLogSampler.sample()) {
+            log.info("Received response from billing service via GRPC: {}", response);
+        }
+    }
+
+    //billing.grpc.create-account timer, outcome is the grpc status code so deadline and unavailable show up separately
+    private void record(Timer.Sample sample, String mode, Throwable error){
+        sample.stop(Timer.builder("billing.grpc.create-account")
+                .description("CreateBillingAccount calls to billing-service, retries included")
+                .tag("mode", mode)
+                .tag("outcome", error == null ? Status.Code.OK.name() : Status.fromThrowable(error).getCode().name())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    //grpc retries UNAVAILABLE calls itself with exponential backoff (billing-service also answers UNAVAILABLE when it could not
+    //save the account), retrying is safe because billing-service returns the existing account for a patient it already has
+    private static Map<String, Object> retryServiceConfig(int maxAttempts, long initialBackoffMs, long maxBackoffMs){
+        Map<String, Object> retryPolicy = Map.of(
+                "maxAttempts", (double) maxAttempts,
+                "initialBackoff", toDuration(initialBackoffMs),
+                "maxBackoff", toDuration(maxBackoffMs),
+                "backoffMultiplier", 2.0,
+                "retryableStatusCodes", List.of(Status.Code.UNAVAILABLE.name()));
+
+        Map<String, Object> methodConfig = Map.of(
+                "name", List.of(Map.of("service", BillingServiceGrpc.SERVICE_NAME)),
+                "retryPolicy", retryPolicy);
+
+        return Map.of("methodConfig", List.of(methodConfig));
+    }
+
+    //service config durations are strings in seconds e.g. "0.100s"
+    private static String toDuration(long millis){
+        return BigDecimal.valueOf(millis).movePointLeft(3).toPlainString() + "s";
     }
 }
@@ -1,37 +1,136 @@
 package com.pm.patientservice.kafka;
 
+import com.google.protobuf.FieldMask;
+import com.pm.patientservice.model.OutboxEvent;
 import com.pm.patientservice.model.Patient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.kafka.core.KafkaTemplate;
+import com.pm.patientservice.repository.OutboxEventRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import patient.cache.PatientCacheInvalidation;
 import patient.events.PatientEvent;
+import patient.events.PatientEventType;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 @Service //Spring will manage this class for us and inject all the dependencies that it needs
-//this class is responsible for sending events to a given kafka topic
+//this class is responsible for creating the events that go to a given kafka topic
+//the timer only covers writing the outbox row, the time until kafka acks it is timed in OutboxRelay
+@Timed(value = "patient.events.producer", histogram = true)
 public class KafkaProducer {
-    private static final Logger log = LoggerFactory.getLogger(KafkaProducer.class);
-    //this is essentially how we define a message types and we use kafka template to send this messages
-    // By this we specifying that our messages that we send to kafka topic from this kafka producer are in Key value pairs
-    //this is telling kafka we are going to send a kafka event as key of type string and value of byte[]
-    //So everytime we produce and send msg we are going to convert msg to byte array and also gonna add a key this value and this will be sending to with the KafkaTemolate
-    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    static final String PATIENT_TOPIC = "patient";
+    static final String PATIENT_CACHE_TOPIC = "patient-cache-invalidation";
+    static final String TRACEPARENT = "traceparent";
+
+    //field mask paths, these are the field names in patient_event.proto
+    public static final String NAME_FIELD = "name";
+    public static final String EMAIL_FIELD = "email";
+    public static final String ADDRESS_FIELD = "address";
+    public static final String DATE_OF_BIRTH_FIELD = "date_of_birth";
 
-    public KafkaProducer(KafkaTemplate<String, byte[]> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    //Events are not sent to kafka from here any more, they are written to the outbox table in the caller's transaction
+    //and OutboxRelay sends them with the KafkaTemplate<String, byte[]> in the background
+    //So everytime we produce msg we still convert msg to byte array and add a key, it is just stored until the relay picks it up
+    private final OutboxEventRepository outboxEventRepository;
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    public KafkaProducer(OutboxEventRepository outboxEventRepository, Tracer tracer, ObjectProvider<Propagator> propagator) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.tracer = tracer;
+        this.propagator = propagator.getIfAvailable(() -> Propagator.NOOP);
     }
 
+    //MANDATORY so we fail fast if someone calls this outside the transaction that saves the patient
+    @Transactional(propagation = Propagation.MANDATORY)
     public void sendEvent(Patient patient){
-        PatientEvent event = PatientEvent.newBuilder()
+        saveEvent(patient.getId(), createdEvent(patient));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void sendUpdatedEvent(Patient patient, Collection<String> changedFields){
+        saveEvent(patient.getId(), updatedEvent(patient, changedFields));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void sendDeletedEvent(UUID patientId){
+        saveEvent(patientId, deletedEvent(patientId));
+    }
+
+    //the events are built in static methods so PatientEventBenchmark (benchmarks module) measures this exact code
+    public static PatientEvent createdEvent(Patient patient){
+        return PatientEvent.newBuilder()
                 .setPatientId(patient.getId().toString())
                 .setName(patient.getName().toString())
                 .setEmail(patient.getEmail().toString())
+                .setAddress(patient.getAddress())
+                .setDateOfBirth(patient.getDateOfBirth().toString())
                 .setEventType("PATIENT CREATED")
+                .setType(PatientEventType.PATIENT_CREATED)
                 .build();
-        try{
-            kafkaTemplate.send("patient", patient.getId().toString(), event.toByteArray());
-        } catch (Exception e){
-            log.error("Error sending PatientCreated even: {}", event);
+    }
+
+    //Only the changed fields are set on the event and listed in changed_fields, so consumers can apply it as a delta
+    public static PatientEvent updatedEvent(Patient patient, Collection<String> changedFields){
+        PatientEvent.Builder event = PatientEvent.newBuilder()
+                .setPatientId(patient.getId().toString())
+                .setEventType("PATIENT UPDATED")
+                .setType(PatientEventType.PATIENT_UPDATED)
+                .setChangedFields(FieldMask.newBuilder().addAllPaths(changedFields));
+
+        for (String field : changedFields) {
+            switch (field) {
+                case NAME_FIELD -> event.setName(patient.getName());
+                case EMAIL_FIELD -> event.setEmail(patient.getEmail());
+                case ADDRESS_FIELD -> event.setAddress(patient.getAddress());
+                case DATE_OF_BIRTH_FIELD -> event.setDateOfBirth(patient.getDateOfBirth().toString());
+                default -> throw new IllegalArgumentException("Unknown patient event field " + field);
+            }
+        }
+        return event.build();
+    }
+
+    public static PatientEvent deletedEvent(UUID patientId){
+        return PatientEvent.newBuilder()
+                .setPatientId(patientId.toString())
+                .setEventType("PATIENT DELETED")
+                .setType(PatientEventType.PATIENT_DELETED)
+                .build();
+    }
+
+    //every event of a patient uses the patient id as key, so they land on the same partition and are consumed in order
+    private void saveEvent(UUID patientId, PatientEvent event){
+        outboxEventRepository.save(new OutboxEvent(PATIENT_TOPIC, patientId.toString(), event.toByteArray(), currentTraceParent()));
+    }
+
+    //Tells every replica (including this one) to evict the patient from its cache, it goes through the outbox as well
+    //so it is only sent once the update/delete has committed
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void sendCacheInvalidation(UUID patientId){
+        PatientCacheInvalidation invalidation = PatientCacheInvalidation.newBuilder()
+                .setPatientId(patientId.toString())
+                .build();
+
+        outboxEventRepository.save(new OutboxEvent(PATIENT_CACHE_TOPIC, patientId.toString(), invalidation.toByteArray(),
+                currentTraceParent()));
+    }
+
+    //the relay sends the event later on its own thread, so the trace it belongs to is stored with the row
+    private String currentTraceParent(){
+        TraceContext context = tracer.currentTraceContext().context();
+        if (context == null) {
+            return null;
         }
+        Map<String, String> headers = new HashMap<>();
+        propagator.inject(context, headers, Map::put);
+        return headers.get(TRACEPARENT);
     }
 }
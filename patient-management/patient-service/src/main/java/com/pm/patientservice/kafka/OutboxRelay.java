@@ -0,0 +1,167 @@
+package com.pm.patientservice.kafka;
+
+import com.pm.patientservice.model.OutboxEvent;
+import com.pm.patientservice.model.OutboxRelayLock;
+import com.pm.patientservice.repository.OutboxEventRepository;
+import com.pm.patientservice.repository.OutboxRelayLockRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//Background job that drains the outbox table to kafka in batches
+//This runs off the request thread so a slow or unavailable broker never adds latency to the patient endpoints
+//Every replica runs it, but a batch is only sent while holding the OutboxRelayLock row, so there is one active relay
+//at a time and a batch is acked by kafka before the next one (on any replica) is read
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxRelayLockRepository outboxRelayLockRepository;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+    private final MeterRegistry meterRegistry;
+    //how long events sit in the outbox before kafka has them, i.e. how far consumers are behind the writes
+    private final Timer deliveryDelay;
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       OutboxRelayLockRepository outboxRelayLockRepository,
+                       KafkaTemplate<String, byte[]> kafkaTemplate,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${outbox.relay.batch-size:500}") int batchSize,
+                       @Value("${outbox.relay.send-timeout-ms:10000}") long sendTimeoutMs,
+                       MeterRegistry meterRegistry,
+                       Tracer tracer,
+                       ObjectProvider<Propagator> propagator) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.outboxRelayLockRepository = outboxRelayLockRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.meterRegistry = meterRegistry;
+        this.deliveryDelay = Timer.builder("patient.events.outbox.delivery-delay")
+                .description("Time from the outbox row being written to kafka acknowledging it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.tracer = tracer;
+        this.propagator = propagator.getIfAvailable(() -> Propagator.NOOP);
+    }
+
+    //the lock row is created by whichever replica starts first, ticks before this just find nothing to lock
+    @EventListener(ApplicationReadyEvent.class)
+    public void createLock() {
+        try {
+            if (!outboxRelayLockRepository.existsById(OutboxRelayLock.RELAY)) {
+                outboxRelayLockRepository.save(new OutboxRelayLock(OutboxRelayLock.RELAY));
+            }
+        } catch (DataIntegrityViolationException e) {
+            //another replica inserted it at the same time
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:100}")
+    public void relay() {
+        try {
+            //keep going while we are getting full batches so a backlog is drained without waiting for the next tick
+            int sent;
+            do {
+                sent = relayBatch();
+            } while (sent == batchSize);
+        } catch (PessimisticLockingFailureException e) {
+            //only databases without SKIP LOCKED (h2) get here, it means the same as finding the lock taken
+            log.debug("Outbox relay lock is held by another replica");
+        } catch (Exception e) {
+            //the rows are still in the outbox because the transaction rolled back, they will be retried on the next tick
+            log.warn("Error relaying outbox events to kafka, will retry: {}", e.getMessage());
+        }
+    }
+
+    private int relayBatch() {
+        Integer sent = transactionTemplate.execute(status -> {
+            //held until this batch is committed, if another replica is relaying we leave it to them this tick
+            if (outboxRelayLockRepository.tryLock(OutboxRelayLock.RELAY).isEmpty()) {
+                return 0;
+            }
+            List<OutboxEvent> events = outboxEventRepository.findBatchForRelay(PageRequest.of(0, batchSize));
+            if (events.isEmpty()) {
+                return 0;
+            }
+
+            //send the whole batch first and then wait for the acks so the producer can group them into a few requests
+            CompletableFuture<?>[] acks = events.stream()
+                    .map(this::send)
+                    .toArray(CompletableFuture[]::new);
+            try {
+                CompletableFuture.allOf(acks).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException("Kafka did not acknowledge outbox batch", e);
+            }
+
+            //only delete once kafka has every message, if anything above fails the batch is sent again
+            //which is safe because consumers already have to cope with at least once delivery
+            outboxEventRepository.deleteAllInBatch(events);
+            return events.size();
+        });
+        return sent == null ? 0 : sent;
+    }
+
+    //times every message from send to the broker's ack (acks=all, so that includes replication)
+    private CompletableFuture<?> send(OutboxEvent event) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Span span = outboxSpan(event);
+        //the template's producer span (and the traceparent header the consumers read) is a child of the outbox span
+        try (Tracer.SpanInScope scope = tracer.withSpan(span)) {
+            return kafkaTemplate.send(event.getTopic(), event.getMessageKey(), event.getPayload())
+                    .whenComplete((result, e) -> {
+                        sample.stop(Timer.builder("patient.events.kafka.send")
+                                .description("Kafka send to ack latency for outbox events")
+                                .tag("topic", event.getTopic())
+                                .tag("outcome", e == null ? "success" : "failure")
+                                .publishPercentileHistogram()
+                                .register(meterRegistry));
+                        if (e == null) {
+                            deliveryDelay.record(Duration.between(event.getCreatedAt(), Instant.now()));
+                        } else {
+                            span.error(e);
+                        }
+                        span.end();
+                    });
+        }
+    }
+
+    //continues the trace of the request that wrote the event, and starts when the row was written so the time
+    //the event waited in the outbox shows up in the trace
+    private Span outboxSpan(OutboxEvent event) {
+        return propagator.extract(event, (outboxEvent, key) ->
+                        KafkaProducer.TRACEPARENT.equals(key) ? outboxEvent.getTraceParent() : null)
+                .name("outbox " + event.getTopic())
+                .startTimestamp(event.getCreatedAt().toEpochMilli(), TimeUnit.MILLISECONDS)
+                .start();
+    }
+}
@@ -0,0 +1,49 @@
+package com.pm.patientservice.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.patientservice.config.CacheConfig;
+import com.pm.patientservice.model.Patient;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+import patient.cache.PatientCacheInvalidation;
+
+import java.util.UUID;
+
+@Service
+//Every replica keeps its own patient cache, so each one consumes the invalidations with its own consumer group
+//(random group id) and only from the end of the topic, old invalidations are useless to a node that just started with an empty cache
+public class PatientCacheInvalidationConsumer {
+    private static final Logger log = LoggerFactory.getLogger(PatientCacheInvalidationConsumer.class);
+
+    private final Cache patientCache;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public PatientCacheInvalidationConsumer(CacheManager cacheManager, EntityManagerFactory entityManagerFactory) {
+        this.patientCache = cacheManager.getCache(CacheConfig.PATIENT_CACHE);
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @KafkaListener(topics = KafkaProducer.PATIENT_CACHE_TOPIC, groupId = "patient-service-cache-${random.uuid}",
+            properties = {
+                    "value.deserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer",
+                    "auto.offset.reset=latest"
+            })
+    public void consumeInvalidation(byte[] message){
+        try {
+            PatientCacheInvalidation invalidation = PatientCacheInvalidation.parseFrom(message);
+            UUID patientId = UUID.fromString(invalidation.getPatientId());
+
+            patientCache.evict(patientId);
+            //also drop the hibernate second level cache entry, does nothing when that cache is switched off
+            entityManagerFactory.getCache().evict(Patient.class, patientId);
+            log.debug("Evicted patient {} from cache", patientId);
+        } catch (InvalidProtocolBufferException | IllegalArgumentException e) {
+            log.error("Error deserializing cache invalidation {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.pm.patientservice.kafka;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.patientservice.cache.PatientNameIndex;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Service;
+import patient.events.PatientEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+//Keeps this replica's autocomplete index in step with patients created, updated or deleted on other replicas
+//Changes made on this replica are already in the index, applying their events again does not change anything
+//Every replica uses its own consumer group. The listener only starts once the index is warmed up from the database,
+//and then reads from where the topic ended just before the snapshot query, so changes made while (or after) the
+//snapshot is read are applied on top of it instead of the snapshot undoing them
+public class PatientNameIndexConsumer implements ConsumerSeekAware {
+    private static final Logger log = LoggerFactory.getLogger(PatientNameIndexConsumer.class);
+    static final String LISTENER_ID = "patient-name-index";
+    private static final Duration OFFSETS_TIMEOUT = Duration.ofSeconds(10);
+
+    private final PatientNameIndex patientNameIndex;
+    private final ConsumerFactory<?, ?> consumerFactory;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    //false in tests, where there is no broker
+    private final boolean listenerEnabled;
+    //partition -> end offset before the snapshot, removed once the listener has seeked there
+    private final Map<TopicPartition, Long> startOffsets = new ConcurrentHashMap<>();
+
+    public PatientNameIndexConsumer(PatientNameIndex patientNameIndex,
+                                    ConsumerFactory<?, ?> consumerFactory,
+                                    KafkaListenerEndpointRegistry listenerRegistry,
+                                    @Value("${spring.kafka.listener.auto-startup:true}") boolean listenerEnabled) {
+        this.patientNameIndex = patientNameIndex;
+        this.consumerFactory = consumerFactory;
+        this.listenerRegistry = listenerRegistry;
+        this.listenerEnabled = listenerEnabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpAndStart() {
+        if (listenerEnabled) {
+            recordEndOffsets();
+        }
+        patientNameIndex.warmUp();
+        if (listenerEnabled) {
+            listenerRegistry.getListenerContainer(LISTENER_ID).start();
+        }
+    }
+
+    private void recordEndOffsets() {
+        try (Consumer<?, ?> consumer = consumerFactory.createConsumer()) {
+            List<TopicPartition> partitions = consumer.partitionsFor(KafkaProducer.PATIENT_TOPIC, OFFSETS_TIMEOUT).stream()
+                    .map(partition -> new TopicPartition(partition.topic(), partition.partition()))
+                    .toList();
+            startOffsets.putAll(consumer.endOffsets(partitions, OFFSETS_TIMEOUT));
+        } catch (KafkaException e) {
+            //the listener falls back to the end of the topic, changes made during the warm up can be missed
+            log.warn("Could not read the end offsets of {} before warming up the name index: {}",
+                    KafkaProducer.PATIENT_TOPIC, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        for (TopicPartition partition : assignments.keySet()) {
+            Long offset = startOffsets.remove(partition);
+            if (offset != null) {
+                callback.seek(partition.topic(), partition.partition(), offset);
+            }
+        }
+    }
+
+    @KafkaListener(id = LISTENER_ID, autoStartup = "false",
+            topics = KafkaProducer.PATIENT_TOPIC, groupId = "patient-service-name-index-${random.uuid}",
+            properties = {
+                    "value.deserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer",
+                    "auto.offset.reset=latest"
+            })
+    public void consumeEvent(byte[] message){
+        try {
+            PatientEvent event = PatientEvent.parseFrom(message);
+            UUID patientId = UUID.fromString(event.getPatientId());
+
+            switch (event.getType()) {
+                case PATIENT_CREATED -> patientNameIndex.put(patientId, event.getName(), event.getEmail());
+                case PATIENT_UPDATED -> applyUpdate(patientId, event);
+                case PATIENT_DELETED -> patientNameIndex.remove(patientId);
+                default -> { }
+            }
+        } catch (InvalidProtocolBufferException | IllegalArgumentException e) {
+            log.error("Error deserializing patient event {}", e.getMessage());
+        }
+    }
+
+    //update events only carry the changed fields, the rest comes from what the index already has
+    private void applyUpdate(UUID patientId, PatientEvent event){
+        var paths = event.getChangedFields().getPathsList();
+        if (!paths.contains(KafkaProducer.NAME_FIELD) && !paths.contains(KafkaProducer.EMAIL_FIELD)) {
+            return;
+        }
+        PatientNameIndex.IndexedPatient current = patientNameIndex.get(patientId);
+        String name = paths.contains(KafkaProducer.NAME_FIELD) ? event.getName() : current == null ? null : current.name();
+        String email = paths.contains(KafkaProducer.EMAIL_FIELD) ? event.getEmail() : current == null ? null : current.email();
+        if (name == null) {
+            //we never saw this patient and the event does not tell us the name, nothing to index
+            return;
+        }
+        patientNameIndex.put(patientId, name, email);
+    }
+}
@@ -0,0 +1,68 @@
+package com.pm.patientservice.kafka;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//patient-service produces the patient topic, so it decides how many partitions it has (consumers such as analytics
+//size their listener threads to it). Without this the first send auto creates it with the broker default, 1 on MSK
+//The topic is only ever created, never changed: adding partitions moves patient ids to other partitions, and a
+//consumer could then read a patient's update or delete before the earlier events still in the old partition.
+//Not a NewTopic bean for that reason, KafkaAdmin adds partitions to an existing topic that has fewer
+@Component
+public class PatientTopicInitializer {
+    private static final Logger log = LoggerFactory.getLogger(PatientTopicInitializer.class);
+    private static final long CREATE_TIMEOUT_SECONDS = 10;
+
+    private final KafkaAdmin kafkaAdmin;
+    private final int partitions;
+    //false in tests, where there is no broker
+    private final boolean autoCreate;
+
+    public PatientTopicInitializer(KafkaAdmin kafkaAdmin,
+                                   @Value("${patient.kafka.topic.partitions:3}") int partitions,
+                                   @Value("${spring.kafka.admin.auto-create:true}") boolean autoCreate) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.partitions = partitions;
+        this.autoCreate = autoCreate;
+    }
+
+    //runs before PatientNameIndexConsumer reads the end offsets of the topic
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void createPatientTopic() {
+        if (!autoCreate) {
+            return;
+        }
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            admin.createTopics(List.of(new NewTopic(KafkaProducer.PATIENT_TOPIC, Optional.of(partitions), Optional.empty())))
+                    .all()
+                    .get(CREATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            log.info("Created topic {} with {} partitions", KafkaProducer.PATIENT_TOPIC, partitions);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TopicExistsException) {
+                log.info("Topic {} already exists, its partitions are left as they are", KafkaProducer.PATIENT_TOPIC);
+            } else {
+                log.error("Could not create topic {}: {}", KafkaProducer.PATIENT_TOPIC, e.getCause().getMessage());
+            }
+        } catch (TimeoutException e) {
+            log.error("Could not create topic {} within {}s", KafkaProducer.PATIENT_TOPIC, CREATE_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.pm.patientservice.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+//Lets roughly one in every rate calls through, for whole payload dumps on the request path
+//The logs still show what the traffic looks like, without a protobuf toString() and a log write on every request
+//rate 1 logs everything and 0 logs nothing
+public class LogSampler {
+    private final int rate;
+
+    public LogSampler(int rate) {
+        this.rate = rate;
+    }
+
+    //a thread local random instead of a shared counter so busy threads do not fight over one cache line
+    public boolean sample() {
+        return rate == 1 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.pm.patientservice.mapper;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Turns one line of a patient csv upload into a request DTO
+//Columns are name,email,address,dateOfBirth,registeredDate and fields can be wrapped in double quotes (addresses have commas in them)
+public class PatientCsvMapper {
+    public static final String HEADER = "name,email,address,dateOfBirth,registeredDate";
+
+    public static PatientRequestDTO toDTO(String line){
+        List<String> fields = split(line);
+        PatientRequestDTO patientRequestDTO = new PatientRequestDTO();
+        //missing columns are left null so bean validation reports them like any other blank field
+        patientRequestDTO.setName(field(fields, 0));
+        patientRequestDTO.setEmail(field(fields, 1));
+        patientRequestDTO.setAddress(field(fields, 2));
+        patientRequestDTO.setDateOfBirth(field(fields, 3));
+        patientRequestDTO.setRegisteredDate(field(fields, 4));
+        return patientRequestDTO;
+    }
+
+    private static String field(List<String> fields, int index){
+        return index < fields.size() ? fields.get(index).trim() : null;
+    }
+
+    private static List<String> split(String line){
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    //"" inside a quoted field is an escaped quote
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,69 @@
+package com.pm.patientservice.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.Instant;
+import java.util.UUID;
+
+//A kafka message waiting to be sent. It is written in the same transaction as the patient change
+//so the event is only ever published if the change is committed, and is never lost if kafka is down
+@Entity
+@Table(name = "outbox_event", indexes = @Index(name = "idx_outbox_event_created_at", columnList = "createdAt"))
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @NotNull
+    private String topic;
+
+    @NotNull
+    private String messageKey;
+
+    @NotNull
+    @Column(length = 65536)
+    private byte[] payload;
+
+    @NotNull
+    private Instant createdAt;
+
+    //W3C traceparent of the request that wrote the event, the relay continues that trace when it sends to kafka
+    //null when the write was not traced
+    private String traceParent;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(String topic, String messageKey, byte[] payload, String traceParent) {
+        this.topic = topic;
+        this.messageKey = messageKey;
+        this.payload = payload;
+        this.traceParent = traceParent;
+        this.createdAt = Instant.now();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getTraceParent() {
+        return traceParent;
+    }
+}
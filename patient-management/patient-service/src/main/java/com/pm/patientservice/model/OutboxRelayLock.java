@@ -0,0 +1,27 @@
+package com.pm.patientservice.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+//A single row the outbox relay locks for each batch, so only one patient-service replica sends at a time and
+//events with the same key (e.g. created then updated for one patient) reach kafka in the order they were written
+@Entity
+@Table(name = "outbox_relay_lock")
+public class OutboxRelayLock {
+    public static final String RELAY = "outbox-relay";
+
+    @Id
+    private String name;
+
+    public OutboxRelayLock() {
+    }
+
+    public OutboxRelayLock(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
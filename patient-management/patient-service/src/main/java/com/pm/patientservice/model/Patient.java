@@ -3,11 +3,16 @@ package com.pm.patientservice.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
+//only used when the hibernate second level cache is switched on in application.properties
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(indexes = @Index(name = "idx_patient_registered_date_id", columnList = "registeredDate, id"))
 public class Patient {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
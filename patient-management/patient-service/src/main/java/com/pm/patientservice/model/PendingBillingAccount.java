@@ -0,0 +1,82 @@
+package com.pm.patientservice.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.Instant;
+import java.util.UUID;
+
+//A billing account that billing-service has not confirmed yet. It is written in the same transaction as the patient
+//and deleted once the billing call succeeds, so a failed call (or a crash before it) is retried instead of lost
+@Entity
+@Table(name = "pending_billing_account", indexes = {
+        @Index(name = "idx_pending_billing_account_patient_id", columnList = "patientId"),
+        @Index(name = "idx_pending_billing_account_next_attempt_at", columnList = "nextAttemptAt")})
+public class PendingBillingAccount {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @NotNull
+    private UUID patientId;
+
+    @NotNull
+    private String name;
+
+    @NotNull
+    private String email;
+
+    //retries so far, the first call made straight after the patient is committed does not count
+    private int attempts;
+
+    //when the retry job may pick it up, moved forward every time the job tries it
+    @NotNull
+    private Instant nextAttemptAt;
+
+    @NotNull
+    private Instant createdAt;
+
+    public PendingBillingAccount() {
+    }
+
+    public PendingBillingAccount(UUID patientId, String name, String email, Instant nextAttemptAt) {
+        this.patientId = patientId;
+        this.name = name;
+        this.email = email;
+        this.nextAttemptAt = nextAttemptAt;
+        this.createdAt = Instant.now();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getPatientId() {
+        return patientId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void scheduleRetry(Instant nextAttemptAt) {
+        this.attempts++;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, UUID> {
+
+    //Oldest events first. Only the replica holding the OutboxRelayLock row calls this, so the rows need no lock of
+    //their own (row level SKIP LOCKED let replicas send newer events for a patient while older ones were still in flight)
+    @Query("SELECT e FROM OutboxEvent e ORDER BY e.createdAt ASC")
+    List<OutboxEvent> findBatchForRelay(Pageable pageable);
+}
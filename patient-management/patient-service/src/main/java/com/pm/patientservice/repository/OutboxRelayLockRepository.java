@@ -0,0 +1,23 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.OutboxRelayLock;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface OutboxRelayLockRepository extends JpaRepository<OutboxRelayLock, String> {
+
+    //SKIP LOCKED (lock timeout -2): empty while another replica's relay holds the row, instead of waiting for it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT l FROM OutboxRelayLock l WHERE l.name = :name")
+    Optional<OutboxRelayLock> tryLock(@Param("name") String name);
+}
@@ -1,13 +1,100 @@
 package com.pm.patientservice.repository;
 
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.dto.PatientSearchResultDTO;
 import com.pm.patientservice.model.Patient;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface PatientRepository extends JpaRepository<Patient, UUID> {
     boolean existsByEmail(String email);
     boolean existsByEmailAndIdNot(String email, UUID id);
+
+    //One query for a whole chunk of imported emails instead of an existsByEmail round trip per row
+    @Query("SELECT p.email FROM Patient p WHERE p.email IN :emails")
+    Set<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    //Matches a lowercased LIKE pattern against name or email, on postgres this uses the trigram indexes for '%abc%'
+    //and the text_pattern_ops indexes for 'ab%' (see db/patient-search-indexes-postgresql.sql)
+    //Slice instead of Page so there is no count query, and only the three shown columns are selected
+    //Sorted on the same lower(name) expression the indexes are built on, so the order is case insensitive on every
+    //database (h2 and C collations put "Zoe" before "alice"). Because of the OR on email no index can return the rows
+    //in this order, postgres sorts the matches (top-N) after the bitmap scan, see the sql file for why there is no btree for it
+    @Query("""
+            SELECT new com.pm.patientservice.dto.PatientSearchResultDTO(p.id, p.name, p.email)
+            FROM Patient p
+            WHERE lower(p.name) LIKE :pattern ESCAPE '\\'
+               OR lower(p.email) LIKE :pattern ESCAPE '\\'
+            ORDER BY lower(p.name) ASC, p.id ASC
+            """)
+    Slice<PatientSearchResultDTO> search(@Param("pattern") String pattern, Pageable pageable);
+
+    //Keyset pagination: we return a List instead of a Page so spring does not fire an extra count(*) query,
+    //the Pageable is only used to put a LIMIT on the query
+    //Rows go straight into the response DTO, no Patient entities in the persistence context and nothing to dirty check
+    @Query("""
+            SELECT new com.pm.patientservice.dto.PatientResponseDTO(p.id, p.name, p.email, p.address, p.dateOfBirth, p.registeredDate)
+            FROM Patient p
+            ORDER BY p.registeredDate ASC, p.id ASC
+            """)
+    List<PatientResponseDTO> findFirstPage(Pageable pageable);
+
+    //Seeks straight to the row after the cursor using the (registered_date, id) index instead of an OFFSET scan
+    @Query("""
+            SELECT new com.pm.patientservice.dto.PatientResponseDTO(p.id, p.name, p.email, p.address, p.dateOfBirth, p.registeredDate)
+            FROM Patient p
+            WHERE p.registeredDate > :registeredDate
+               OR (p.registeredDate = :registeredDate AND p.id > :id)
+            ORDER BY p.registeredDate ASC, p.id ASC
+            """)
+    List<PatientResponseDTO> findPageAfter(@Param("registeredDate") LocalDate registeredDate,
+                                           @Param("id") UUID id,
+                                           Pageable pageable);
+
+    //Server side cursor over the whole table for exports, postgres only honours the fetch size inside a transaction
+    //so this has to be called from a @Transactional method and the stream has to be closed when we are done
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("""
+            SELECT new com.pm.patientservice.dto.PatientResponseDTO(p.id, p.name, p.email, p.address, p.dateOfBirth, p.registeredDate)
+            FROM Patient p
+            """)
+    Stream<PatientResponseDTO> streamAll();
+
+    //Only the email column, used to load the email bloom filter at startup
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "5000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.email FROM Patient p")
+    Stream<String> streamAllEmails();
+
+    //id, name and email of every patient, used to build the autocomplete index at startup
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "5000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.pm.patientservice.dto.PatientSearchResultDTO(p.id, p.name, p.email) FROM Patient p")
+    Stream<PatientSearchResultDTO> streamAllSearchResults();
 }
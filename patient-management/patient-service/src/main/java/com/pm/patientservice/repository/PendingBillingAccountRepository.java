@@ -0,0 +1,34 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.PendingBillingAccount;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PendingBillingAccountRepository extends JpaRepository<PendingBillingAccount, UUID> {
+
+    //Accounts due for a retry, locked with SKIP LOCKED (lock timeout -2) so replicas running the retry job at the
+    //same time take different rows. Order does not matter here, billing creates at most one account per patient
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT p FROM PendingBillingAccount p WHERE p.nextAttemptAt <= :now ORDER BY p.nextAttemptAt ASC")
+    List<PendingBillingAccount> findDueForRetry(@Param("now") Instant now, Pageable pageable);
+
+    //one statement for a whole import chunk, and no select first like deleteAll would do
+    @Modifying
+    @Query("DELETE FROM PendingBillingAccount p WHERE p.patientId IN :patientIds")
+    int deleteByPatientIds(@Param("patientIds") Collection<UUID> patientIds);
+}
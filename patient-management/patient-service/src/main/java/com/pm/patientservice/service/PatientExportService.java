@@ -0,0 +1,61 @@
+package com.pm.patientservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+//Writes the whole patient table as newline delimited json without ever holding more than one batch of patients in memory
+@Service
+public class PatientExportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientExportService.class);
+
+    private final PatientRepository patientRepository;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public PatientExportService(PatientRepository patientRepository, ObjectMapper objectMapper,
+                                @Value("${patient.export.batch-size:500}") int batchSize) {
+        this.patientRepository = patientRepository;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    @Transactional(readOnly = true)
+    public void exportPatients(OutputStream outputStream) throws IOException {
+        JsonGenerator generator = objectMapper.createGenerator(outputStream);
+        //the servlet container owns the response stream so jackson must not close it
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        //jackson puts a space between root values by default, each line has to start with the object itself
+        generator.setRootValueSeparator(null);
+        //send the headers straight away so the client sees the first byte before we start reading the table
+        generator.flush();
+
+        long count = 0;
+        //rows come back as DTOs rather than entities, so the persistence context stays empty however big the table is
+        try (Stream<PatientResponseDTO> patients = patientRepository.streamAll()) {
+            Iterator<PatientResponseDTO> iterator = patients.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+                generator.writeRaw('\n');
+
+                //every batch we push what we have to the client
+                if (++count % batchSize == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        generator.close();
+        log.info("Exported {} patients", count);
+    }
+}
@@ -0,0 +1,222 @@
+package com.pm.patientservice.service;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import com.pm.patientservice.cache.EmailBloomFilter;
+import com.pm.patientservice.cache.PatientNameIndex;
+import com.pm.patientservice.dto.PatientImportResultDTO;
+import com.pm.patientservice.dto.PatientImportRowResultDTO;
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.kafka.KafkaProducer;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.validation.groups.Default;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+//Bulk version of createPatient for migrations
+//Rows are handled in chunks: one email lookup per chunk, one transaction per chunk with the inserts sent as jdbc batches,
+//and one CreateBillingAccounts stream per chunk, so the cost per row is a tiny fraction of a normal create
+@Service
+public class PatientImportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientImportService.class);
+
+    private final PatientRepository patientRepository;
+    private final BillingServiceGrpcClient billingServiceGrpcClient;
+    private final KafkaProducer kafkaProducer;
+    private final EmailBloomFilter emailBloomFilter;
+    private final PatientNameIndex patientNameIndex;
+    private final PendingBillingAccountService pendingBillingAccountService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final int chunkSize;
+
+    public PatientImportService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient,
+                                KafkaProducer kafkaProducer, EmailBloomFilter emailBloomFilter,
+                                PatientNameIndex patientNameIndex, PendingBillingAccountService pendingBillingAccountService,
+                                EntityManager entityManager,
+                                TransactionTemplate transactionTemplate, Validator validator,
+                                @Value("${patient.import.chunk-size:500}") int chunkSize) {
+        this.patientRepository = patientRepository;
+        this.billingServiceGrpcClient = billingServiceGrpcClient;
+        this.kafkaProducer = kafkaProducer;
+        this.emailBloomFilter = emailBloomFilter;
+        this.patientNameIndex = patientNameIndex;
+        this.pendingBillingAccountService = pendingBillingAccountService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    //rows is read lazily so a csv upload is parsed as it arrives and never held in memory as a whole
+    public PatientImportResultDTO importPatients(Iterator<PatientRequestDTO> rows){
+        PatientImportResultDTO result = new PatientImportResultDTO();
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        int rowNumber = 0;
+
+        while (rows.hasNext()) {
+            rowNumber++;
+            ImportRow row = validate(rowNumber, rows.next(), result);
+            if (row != null) {
+                chunk.add(row);
+            }
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, result);
+        }
+
+        //chunks report failures and successes separately, put them back in upload order for the client
+        result.getRows().sort(Comparator.comparingInt(PatientImportRowResultDTO::getRow));
+        log.info("Imported {} patients, {} rows failed, {} billing accounts failed",
+                result.getCreated(), result.getFailed(), result.getBillingFailed());
+        return result;
+    }
+
+    //same rules as POST /patients, returns null when the row is rejected
+    private ImportRow validate(int rowNumber, PatientRequestDTO patientRequestDTO, PatientImportResultDTO result){
+        Set<ConstraintViolation<PatientRequestDTO>> violations =
+                validator.validate(patientRequestDTO, Default.class, CreatePatientValidationGroup.class);
+        if (!violations.isEmpty()) {
+            result.addFailed(rowNumber, "INVALID", violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+            return null;
+        }
+
+        try {
+            return new ImportRow(rowNumber, PatientMapper.toModel(patientRequestDTO));
+        } catch (DateTimeParseException e) {
+            result.addFailed(rowNumber, "INVALID", "Dates must be in yyyy-MM-dd format");
+            return null;
+        }
+    }
+
+    private void importChunk(List<ImportRow> chunk, PatientImportResultDTO result){
+        if (tryImportChunk(chunk, result, false)) {
+            return;
+        }
+        //The email filter only knows about patients created on this replica, so an email taken through another replica
+        //looks new and the unique constraint rolls the chunk back. Retry it once with every email checked against the
+        //database, which turns those rows into DUPLICATE_EMAIL and creates the rest
+        //the rolled back persist already gave these patients ids, hibernate would treat them as detached
+        chunk.forEach(row -> row.patient().setId(null));
+        if (!tryImportChunk(chunk, result, true)) {
+            //a new patient with one of these emails was committed during the retry as well
+            chunk.forEach(row -> result.addFailed(row.rowNumber(), "FAILED", "Chunk rolled back, retry these rows"));
+        }
+    }
+
+    //returns false when the chunk was rolled back, nothing is added to the result in that case
+    private boolean tryImportChunk(List<ImportRow> chunk, PatientImportResultDTO result, boolean checkAllEmails){
+        List<ImportRow> created = new ArrayList<>(chunk.size());
+        List<ImportRow> duplicates = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                //only emails the filter is unsure about go into the IN query, a chunk of brand new emails skips it
+                List<String> maybeExisting = chunk.stream().map(row -> row.patient().getEmail())
+                        .filter(email -> checkAllEmails || emailBloomFilter.mightContain(email)).toList();
+                Set<String> existingEmails = maybeExisting.isEmpty()
+                        ? Set.of() : patientRepository.findExistingEmails(maybeExisting);
+                //catches duplicates inside this chunk, earlier chunks are already committed so the query above covers them
+                Set<String> chunkEmails = new HashSet<>();
+
+                for (ImportRow row : chunk) {
+                    String email = row.patient().getEmail();
+                    if (existingEmails.contains(email) || !chunkEmails.add(email)) {
+                        duplicates.add(row);
+                        continue;
+                    }
+                    //ids are generated in the jvm at persist time, so hibernate can send these inserts as one jdbc batch
+                    entityManager.persist(row.patient());
+                    kafkaProducer.sendEvent(row.patient());
+                    pendingBillingAccountService.add(row.patient());
+                    created.add(row);
+                }
+
+                //flush the batch and drop the entities so the persistence context does not grow across chunks
+                entityManager.flush();
+                entityManager.clear();
+            });
+        } catch (DataIntegrityViolationException | PersistenceException e) {
+            //one of these emails was taken between our check and the insert, the whole chunk was rolled back
+            //entityManager.flush() does not go through spring's exception translation, so the unique constraint shows up
+            //here as hibernate's ConstraintViolationException (a PersistenceException) rather than a DataIntegrityViolationException
+            log.warn("Import chunk rolled back: {}", e.getMessage());
+            return false;
+        }
+
+        //only report rows once the chunk is committed
+        duplicates.forEach(row -> {
+            //remember it so later creates with this email go to the database
+            emailBloomFilter.add(row.patient().getEmail());
+            result.addFailed(row.rowNumber(), "DUPLICATE_EMAIL", "A patient with this email already exists");
+        });
+        created.forEach(row -> {
+            emailBloomFilter.add(row.patient().getEmail());
+            patientNameIndex.put(row.patient().getId(), row.patient().getName(), row.patient().getEmail());
+            result.addCreated(row.rowNumber(), row.patient().getId().toString());
+        });
+        createBillingAccounts(created.stream().map(ImportRow::patient).toList(), result);
+        return true;
+    }
+
+    private void createBillingAccounts(List<Patient> patients, PatientImportResultDTO result){
+        if (patients.isEmpty()) {
+            return;
+        }
+        List<BillingRequest> requests = patients.stream()
+                .map(patient -> BillingRequest.newBuilder()
+                        .setPatientId(patient.getId().toString())
+                        .setName(patient.getName())
+                        .setEmail(patient.getEmail())
+                        .build())
+                .toList();
+
+        List<CompletableFuture<BillingResponse>> responses = billingServiceGrpcClient.createBillingAccounts(requests);
+        List<UUID> billingCreated = new ArrayList<>(patients.size());
+        int billingFailed = 0;
+        for (int i = 0; i < patients.size(); i++) {
+            try {
+                responses.get(i).join();
+                billingCreated.add(patients.get(i).getId());
+            } catch (Exception e) {
+                //still pending, the retry job creates it later
+                billingFailed++;
+            }
+        }
+        pendingBillingAccountService.completed(billingCreated);
+        result.addBillingFailed(billingFailed);
+    }
+
+    private record ImportRow(int rowNumber, Patient patient) {
+    }
+}
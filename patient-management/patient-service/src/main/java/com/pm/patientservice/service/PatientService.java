@@ -1,83 +1,290 @@
 package com.pm.patientservice.service;
 
 import billing.BillingServiceGrpc;
+import com.pm.patientservice.cache.EmailBloomFilter;
+import com.pm.patientservice.cache.PatientNameIndex;
+import com.pm.patientservice.config.CacheConfig;
+import com.pm.patientservice.dto.PatientCursor;
+import com.pm.patientservice.dto.PatientPageResponseDTO;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.dto.PatientSearchResponseDTO;
+import com.pm.patientservice.dto.PatientSearchResultDTO;
 import com.pm.patientservice.exception.EmailAlreadyExistsException;
+import com.pm.patientservice.exception.InvalidSearchQueryException;
 import com.pm.patientservice.exception.PatientNotFoundException;
 import com.pm.patientservice.grpc.BillingServiceGrpcClient;
 import com.pm.patientservice.kafka.KafkaProducer;
 import com.pm.patientservice.mapper.PatientMapper;
 import com.pm.patientservice.model.Patient;
 import com.pm.patientservice.repository.PatientRepository;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.UUID;
 
+//one patient.service timer per public method (tagged with the method name), with histogram buckets so the
+//percentiles can be worked out in prometheus across every instance
+@Timed(value = "patient.service", histogram = true)
 @Service
 public class PatientService {
+    private static final Logger log = LoggerFactory.getLogger(PatientService.class);
     private final PatientRepository patientRepository;
     private final BillingServiceGrpcClient billingServiceGrpcClient;
     private final KafkaProducer kafkaProducer;
+    private final EmailBloomFilter emailBloomFilter;
+    private final PatientNameIndex patientNameIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final PendingBillingAccountService pendingBillingAccountService;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final boolean billingAsync;
+    private final int defaultAutocompleteLimit;
+    private final int maxAutocompleteLimit;
 
-    public PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient, KafkaProducer kafkaProducer) {
+    public PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient, KafkaProducer kafkaProducer,
+                          EmailBloomFilter emailBloomFilter, PatientNameIndex patientNameIndex,
+                          TransactionTemplate transactionTemplate, PendingBillingAccountService pendingBillingAccountService,
+                          @Value("${patient.page.default-size:50}") int defaultPageSize,
+                          @Value("${patient.page.max-size:500}") int maxPageSize,
+                          @Value("${billing.service.grpc.async:false}") boolean billingAsync,
+                          @Value("${patient.autocomplete.default-limit:10}") int defaultAutocompleteLimit,
+                          @Value("${patient.autocomplete.max-limit:50}") int maxAutocompleteLimit) {
         this.patientRepository = patientRepository;
         this.billingServiceGrpcClient = billingServiceGrpcClient;
         this.kafkaProducer = kafkaProducer;
+        this.emailBloomFilter = emailBloomFilter;
+        this.patientNameIndex = patientNameIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.pendingBillingAccountService = pendingBillingAccountService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.billingAsync = billingAsync;
+        this.defaultAutocompleteLimit = defaultAutocompleteLimit;
+        this.maxAutocompleteLimit = maxAutocompleteLimit;
     }
 
-    public List<PatientResponseDTO> getPatients (){
-        List<Patient> patients = patientRepository.findAll();
+    //readOnly lets hibernate skip flushing and tells the driver this connection only reads
+    @Transactional(readOnly = true)
+    public PatientPageResponseDTO getPatients(String cursor, Integer size){
+        int pageSize = resolvePageSize(size);
+        //we ask for one extra row so we know if there is a next page without running a count query
+        Pageable limit = PageRequest.of(0, pageSize + 1);
 
-        //like for each loop that takes every patient data from current Patient list to the function to the method and then
-        //return the result to patientResponseDTOs where toList() is used
-        //Basically used when Patient object is transformed to ResponseDTOs where DTOs are string and will be seen by the client
-        //(patient -> PatientMapper.toDTO(patient)) Lambda function for this is PatientMapper::toDTO
+        List<PatientResponseDTO> patients;
+        if(cursor == null || cursor.isBlank()){
+            patients = patientRepository.findFirstPage(limit);
+        } else {
+            PatientCursor after = PatientCursor.decode(cursor);
+            patients = patientRepository.findPageAfter(after.getRegisteredDate(), after.getId(), limit);
+        }
+
+        String nextCursor = null;
+        if(patients.size() > pageSize){
+            patients = patients.subList(0, pageSize);
+            nextCursor = PatientCursor.from(patients.get(pageSize - 1)).encode();
+        }
+
+        //the queries already return PatientResponseDTOs, so there is no Patient -> DTO mapping step on list reads any more
+        return new PatientPageResponseDTO(patients, nextCursor);
+    }
+
+    //Searches by part of a name or email, the query is matched case insensitively anywhere in the value
+    @Transactional(readOnly = true)
+    public PatientSearchResponseDTO searchPatients(String query, Integer page, Integer size){
+        String term = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if(term.isEmpty()){
+            throw new InvalidSearchQueryException("Search query must not be empty");
+        }
+        //escape the LIKE wildcards so a search for "a_b" does not match "axb"
+        String escaped = term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        //trigrams need at least 3 characters, shorter searches are prefix matches which the btree indexes can answer
+        String pattern = term.length() < 3 ? escaped + "%" : "%" + escaped + "%";
 
-        // List<PatientResponseDTO> patientResponseDTOs =
-        //                patients.stream().map(PatientMapper::toDTO).toList();
-        return patients.stream().map(PatientMapper::toDTO).toList();
+        int pageNumber = page == null ? 0 : Math.max(0, page);
+        Slice<PatientSearchResultDTO> results = patientRepository.search(pattern, PageRequest.of(pageNumber, resolvePageSize(size)));
+        return new PatientSearchResponseDTO(results.getContent(), results.hasNext() ? pageNumber + 1 : null);
     }
 
+    //Type-ahead, answered from the in memory name index only
+    public List<PatientSearchResultDTO> autocompletePatients(String query, Integer limit){
+        if(query == null || query.isBlank()){
+            throw new InvalidSearchQueryException("Search query must not be empty");
+        }
+        int resultLimit = limit == null ? defaultAutocompleteLimit : Math.max(1, Math.min(limit, maxAutocompleteLimit));
+        return patientNameIndex.autocomplete(query, resultLimit);
+    }
+
+    //no size means the default page size, and anything above the max is capped so one request can never load the whole table
+    private int resolvePageSize(Integer size){
+        if(size == null){
+            return defaultPageSize;
+        }
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
+
+    //The patient row and its outbox event are committed together, so the event can never be lost or sent for a patient that was rolled back
+    //Not @Transactional: the billing call is made once the transaction has committed, so a slow billing service never
+    //holds a database connection, and billing never gets an account for a rolled back patient
     public PatientResponseDTO createPatient(PatientRequestDTO patientRequestDTO){
-        if(patientRepository.existsByEmail(patientRequestDTO.getEmail())){
-            throw new EmailAlreadyExistsException("A patient with this email " + "already exists" + patientRequestDTO.getEmail());
+        Patient newPatient;
+        try {
+            newPatient = transactionTemplate.execute(status -> {
+                //most new patients have an email the filter has never seen, so they skip the existsByEmail query
+                if(emailBloomFilter.mightContain(patientRequestDTO.getEmail())
+                        && patientRepository.existsByEmail(patientRequestDTO.getEmail())){
+                    throw new EmailAlreadyExistsException("A patient with this email " + "already exists" + patientRequestDTO.getEmail());
+                }
+                //flushed so a constraint violation stops us before the event is written
+                Patient patient = patientRepository.saveAndFlush(PatientMapper.toModel(patientRequestDTO));
+                kafkaProducer.sendEvent(patient);
+                //committed with the patient, so the billing account is retried if the call below fails or never happens
+                pendingBillingAccountService.add(patient);
+                return patient;
+            });
+        } catch (DataIntegrityViolationException e) {
+            throw emailTakenOr(e, patientRequestDTO.getEmail(), null);
         }
-        Patient newPatient = patientRepository.save(
-                PatientMapper.toModel(patientRequestDTO));
+        emailBloomFilter.add(newPatient.getEmail());
+        patientNameIndex.put(newPatient.getId(), newPatient.getName(), newPatient.getEmail());
 
-        billingServiceGrpcClient.createBillingAccount(newPatient.getId().toString(),
-                newPatient.getName(), newPatient.getEmail());
+        UUID newPatientId = newPatient.getId();
+        if(billingAsync){
+            //the request thread does not wait for billing at all
+            billingServiceGrpcClient.createBillingAccountAsync(newPatientId.toString(),
+                            newPatient.getName(), newPatient.getEmail())
+                    .whenComplete((response, e) -> {
+                        if(e != null){
+                            log.warn("Billing account for patient {} failed, it will be retried: {}", newPatientId, e.getMessage());
+                        } else {
+                            pendingBillingAccountService.completed(List.of(newPatientId));
+                        }
+                    });
+        } else {
+            try {
+                billingServiceGrpcClient.createBillingAccount(newPatientId.toString(),
+                        newPatient.getName(), newPatient.getEmail());
+                pendingBillingAccountService.completed(List.of(newPatientId));
+            } catch (StatusRuntimeException e) {
+                //the patient is committed and the account will be retried, so the create still succeeds
+                log.warn("Billing account for patient {} failed, it will be retried: {}", newPatientId, e.getMessage());
+            }
+        }
 
-        kafkaProducer.sendEvent(newPatient);
         return PatientMapper.toDTO(newPatient);
     }
 
+    //When the filter lets us skip the email query the unique constraint is what catches a duplicate (e.g. one created on
+    //another replica). The failed transaction is rolled back by now (postgres would refuse any query inside it), so we
+    //ask the database whether the email is taken, any other violation (a too long value, another unique constraint)
+    //is not a duplicate email and goes back to the caller as it is
+    private RuntimeException emailTakenOr(DataIntegrityViolationException e, String email, UUID id){
+        boolean taken = id == null ? patientRepository.existsByEmail(email) : patientRepository.existsByEmailAndIdNot(email, id);
+        if(!taken){
+            return e;
+        }
+        //the filter did not know this email, remember it so the next request with it goes to the database
+        emailBloomFilter.add(email);
+        return new EmailAlreadyExistsException("A patient with this email " + "already exists" + email);
+    }
+
+    //the autocomplete index should never show a patient whose transaction rolled back
+    private static void afterCommit(Runnable action){
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    //Read through cache: the first read of a patient goes to postgres, after that it is served from memory until it expires
+    //or is evicted by an update/delete
+    @Cacheable(cacheNames = CacheConfig.PATIENT_CACHE, key = "#id")
+    public PatientResponseDTO getPatient(UUID id){
+        Patient patient = patientRepository.findById(id).orElseThrow(
+                () -> new PatientNotFoundException("Patient not found with ID: "+ id));
+        return PatientMapper.toDTO(patient);
+    }
+
+    //Evicts locally after commit, other replicas evict when the invalidation message reaches them
+    //A transaction template rather than @Transactional, so a unique constraint violation can be checked after the rollback
+    @CacheEvict(cacheNames = CacheConfig.PATIENT_CACHE, key = "#id")
     public PatientResponseDTO updatePatient(UUID id,
            PatientRequestDTO patientRequestDTO){
+        try {
+            return transactionTemplate.execute(status -> applyUpdate(id, patientRequestDTO));
+        } catch (DataIntegrityViolationException e) {
+            throw emailTakenOr(e, patientRequestDTO.getEmail(), id);
+        }
+    }
 
+    private PatientResponseDTO applyUpdate(UUID id, PatientRequestDTO patientRequestDTO){
         //Patient repository will try and find by its id and if not, it will throw exception and will handle that exception in our device
         Patient patient = patientRepository.findById(id).orElseThrow(
                 () -> new PatientNotFoundException("Patient not found with ID: "+ id));
 
         //trying to update but with different ID this just stops the jpa repository from incorrectly flagging the email as duplicate even if trying to update the same record in database
-        if(patientRepository.existsByEmailAndIdNot(patientRequestDTO.getEmail(),id)){
+        //an unchanged email or one the filter has never seen needs no query at all
+        if(!patient.getEmail().equals(patientRequestDTO.getEmail())
+                && emailBloomFilter.mightContain(patientRequestDTO.getEmail())
+                && patientRepository.existsByEmailAndIdNot(patientRequestDTO.getEmail(),id)){
             throw new EmailAlreadyExistsException("A patient with this email " + "already exists" + patientRequestDTO.getEmail());
         }
 
+        LocalDate dateOfBirth = LocalDate.parse(patientRequestDTO.getDateOfBirth());
+        //remember what actually changed so the update event only carries those fields
+        List<String> changedFields = new ArrayList<>();
+        if(!Objects.equals(patient.getName(), patientRequestDTO.getName())) changedFields.add(KafkaProducer.NAME_FIELD);
+        if(!Objects.equals(patient.getEmail(), patientRequestDTO.getEmail())) changedFields.add(KafkaProducer.EMAIL_FIELD);
+        if(!Objects.equals(patient.getAddress(), patientRequestDTO.getAddress())) changedFields.add(KafkaProducer.ADDRESS_FIELD);
+        if(!Objects.equals(patient.getDateOfBirth(), dateOfBirth)) changedFields.add(KafkaProducer.DATE_OF_BIRTH_FIELD);
+
         patient.setName(patientRequestDTO.getName());
         patient.setAddress(patientRequestDTO.getAddress());
         patient.setEmail(patientRequestDTO.getEmail());
-        patient.setDateOfBirth(LocalDate.parse(patientRequestDTO.getDateOfBirth()));
-        Patient updatedPatient = patientRepository.save(patient);
+        patient.setDateOfBirth(dateOfBirth);
+        Patient updatedPatient = patientRepository.saveAndFlush(patient);
+        emailBloomFilter.add(updatedPatient.getEmail());
+        String name = updatedPatient.getName();
+        String email = updatedPatient.getEmail();
+        afterCommit(() -> patientNameIndex.put(id, name, email));
+
+        if(!changedFields.isEmpty()){
+            kafkaProducer.sendUpdatedEvent(updatedPatient, changedFields);
+        }
+        kafkaProducer.sendCacheInvalidation(id);
 
         return PatientMapper.toDTO(updatedPatient);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.PATIENT_CACHE, key = "#id")
+    @Transactional
     public void deletePatient(UUID id){
-        patientRepository.deleteById(id);
+        patientRepository.findById(id).ifPresent(patient -> {
+            patientRepository.delete(patient);
+            kafkaProducer.sendDeletedEvent(id);
+            afterCommit(() -> patientNameIndex.remove(id));
+        });
+        kafkaProducer.sendCacheInvalidation(id);
     }
 }
@@ -0,0 +1,120 @@
+package com.pm.patientservice.service;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.model.PendingBillingAccount;
+import com.pm.patientservice.repository.PendingBillingAccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+//Makes the billing call for a new patient durable, the same way the outbox does for kafka events:
+//add() writes a pending row with the patient, the caller makes the billing call once the patient is committed and
+//calls completed() when it succeeds. Anything still pending after initial-backoff-ms is sent again by retry()
+//Billing creates at most one account per patient, so sending one twice (e.g. a slow first call) is harmless
+@Service
+public class PendingBillingAccountService {
+    private static final Logger log = LoggerFactory.getLogger(PendingBillingAccountService.class);
+
+    private final PendingBillingAccountRepository pendingBillingAccountRepository;
+    private final BillingServiceGrpcClient billingServiceGrpcClient;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    public PendingBillingAccountService(PendingBillingAccountRepository pendingBillingAccountRepository,
+                                        BillingServiceGrpcClient billingServiceGrpcClient,
+                                        TransactionTemplate transactionTemplate,
+                                        @Value("${billing.account.retry.batch-size:100}") int batchSize,
+                                        @Value("${billing.account.retry.initial-backoff-ms:10000}") long initialBackoffMs,
+                                        @Value("${billing.account.retry.max-backoff-ms:300000}") long maxBackoffMs) {
+        this.pendingBillingAccountRepository = pendingBillingAccountRepository;
+        this.billingServiceGrpcClient = billingServiceGrpcClient;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.initialBackoff = Duration.ofMillis(initialBackoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+    }
+
+    //has to run in the transaction that creates the patient, the first retry is after the first call had time to finish
+    public void add(Patient patient) {
+        pendingBillingAccountRepository.save(new PendingBillingAccount(patient.getId(), patient.getName(),
+                patient.getEmail(), Instant.now().plus(initialBackoff)));
+    }
+
+    //billing has these accounts, if the delete fails they are just sent once more by the retry job
+    public void completed(Collection<UUID> patientIds) {
+        if (patientIds.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> pendingBillingAccountRepository.deleteByPatientIds(patientIds));
+        } catch (DataAccessException e) {
+            log.warn("Could not clear {} pending billing accounts: {}", patientIds.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${billing.account.retry.interval-ms:5000}")
+    public void retry() {
+        try {
+            //the rows are pushed back before billing is called, so they are not picked up again while the call is
+            //in flight and the database connection is not held during it
+            List<PendingBillingAccount> due = transactionTemplate.execute(status -> {
+                List<PendingBillingAccount> accounts = pendingBillingAccountRepository.findDueForRetry(
+                        Instant.now(), PageRequest.of(0, batchSize));
+                accounts.forEach(account -> account.scheduleRetry(Instant.now().plus(backoff(account.getAttempts()))));
+                return accounts;
+            });
+            if (due == null || due.isEmpty()) {
+                return;
+            }
+
+            List<BillingRequest> requests = due.stream()
+                    .map(account -> BillingRequest.newBuilder()
+                            .setPatientId(account.getPatientId().toString())
+                            .setName(account.getName())
+                            .setEmail(account.getEmail())
+                            .build())
+                    .toList();
+            List<CompletableFuture<BillingResponse>> responses = billingServiceGrpcClient.createBillingAccounts(requests);
+
+            List<UUID> created = new ArrayList<>(due.size());
+            for (int i = 0; i < due.size(); i++) {
+                PendingBillingAccount account = due.get(i);
+                try {
+                    responses.get(i).join();
+                    created.add(account.getPatientId());
+                } catch (Exception e) {
+                    log.warn("Billing account for patient {} failed again (attempt {}), next try at {}: {}",
+                            account.getPatientId(), account.getAttempts(), account.getNextAttemptAt(), e.getMessage());
+                }
+            }
+            completed(created);
+            log.info("Retried {} pending billing accounts, {} created", due.size(), created.size());
+        } catch (Exception e) {
+            log.warn("Error retrying pending billing accounts: {}", e.getMessage());
+        }
+    }
+
+    //doubles from initial-backoff-ms for every failed retry, capped at max-backoff-ms
+    private Duration backoff(int attempts) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,58 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmailBloomFilterTest {
+
+    private EmailBloomFilter warmedUpFilter(String... existingEmails) {
+        PatientRepository patientRepository = mock(PatientRepository.class);
+        when(patientRepository.streamAllEmails()).thenReturn(Stream.of(existingEmails));
+        EmailBloomFilter filter = new EmailBloomFilter(patientRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), 10_000, 0.01);
+        filter.warmUp();
+        return filter;
+    }
+
+    @Test
+    void everyLoadedOrAddedEmailIsAMaybe() {
+        EmailBloomFilter filter = warmedUpFilter("john.doe@example.com", "jane.smith@example.com");
+        filter.add("new.patient@example.com");
+
+        assertTrue(filter.mightContain("john.doe@example.com"));
+        assertTrue(filter.mightContain("jane.smith@example.com"));
+        assertTrue(filter.mightContain("new.patient@example.com"));
+    }
+
+    @Test
+    void mostUnknownEmailsAreDefinitelyNew() {
+        EmailBloomFilter filter = warmedUpFilter();
+        IntStream.range(0, 10_000).forEach(i -> filter.add("patient" + i + "@example.com"));
+
+        long falsePositives = IntStream.range(0, 10_000)
+                .filter(i -> filter.mightContain("other" + i + "@example.com"))
+                .count();
+        //configured for 1%, leave some room for randomness
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void everythingIsAMaybeBeforeWarmUp() {
+        EmailBloomFilter filter = new EmailBloomFilter(mock(PatientRepository.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), 10_000, 0.01);
+
+        assertTrue(filter.mightContain("anyone@example.com"));
+        filter.warmUp();
+        assertFalse(filter.mightContain("anyone@example.com"));
+    }
+}
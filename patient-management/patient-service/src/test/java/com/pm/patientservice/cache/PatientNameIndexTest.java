@@ -0,0 +1,74 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.dto.PatientSearchResultDTO;
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PatientNameIndexTest {
+    private final UUID maryId = UUID.randomUUID();
+    private final UUID johnId = UUID.randomUUID();
+    private final UUID joanId = UUID.randomUUID();
+    private final PatientRepository patientRepository = mock(PatientRepository.class);
+    private PatientNameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PatientNameIndex(patientRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        index.put(maryId, "Mary-Jane O'Néil", "mary@example.com");
+        index.put(johnId, "John Doe", "john@example.com");
+        index.put(joanId, "Joan Doherty", "joan@example.com");
+    }
+
+    @Test
+    void matchesAnyNameTokenByPrefixIgnoringCaseAndAccents() {
+        assertEquals(List.of("Mary-Jane O'Néil"), names(index.autocomplete("NEIL", 10)));
+        assertEquals(List.of("Mary-Jane O'Néil"), names(index.autocomplete("jan", 10)));
+        assertEquals(List.of("Joan Doherty", "John Doe"), names(index.autocomplete("jo", 10)));
+        assertEquals(List.of("Joan Doherty"), names(index.autocomplete("jo doh", 10)));
+        assertEquals(List.of("Joan Doherty"), names(index.autocomplete("jo", 1)));
+    }
+
+    @Test
+    void updatesAndDeletesReplaceTheOldTokens() {
+        index.put(johnId, "Johnny Smith", "john@example.com");
+        index.remove(joanId);
+
+        assertEquals(List.of("Johnny Smith"), names(index.autocomplete("jo", 10)));
+        assertEquals(List.of(), names(index.autocomplete("doe", 10)));
+        assertEquals(List.of("Johnny Smith"), names(index.autocomplete("smi", 10)));
+    }
+
+    @Test
+    void warmUpDoesNotUndoChangesMadeWhileTheSnapshotIsRead() {
+        //the snapshot read john and joan before they were renamed and deleted, the live changes land mid stream
+        when(patientRepository.streamAllSearchResults()).thenReturn(Stream.of(
+                        new PatientSearchResultDTO(johnId, "John Doe", "john@example.com"),
+                        new PatientSearchResultDTO(joanId, "Joan Doherty", "joan@example.com"))
+                .peek(patient -> {
+                    if (patient.getId().equals(johnId.toString())) {
+                        index.put(johnId, "Johnny Smith", "john@example.com");
+                        index.remove(joanId);
+                    }
+                }));
+
+        index.warmUp();
+
+        assertEquals(List.of("Johnny Smith"), names(index.autocomplete("jo", 10)));
+        assertEquals(List.of(), names(index.autocomplete("doh", 10)));
+    }
+
+    private static List<String> names(List<PatientSearchResultDTO> results) {
+        return results.stream().map(PatientSearchResultDTO::getName).toList();
+    }
+}
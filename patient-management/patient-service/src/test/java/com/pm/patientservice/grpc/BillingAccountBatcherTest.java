@@ -0,0 +1,78 @@
+package com.pm.patientservice.grpc;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import billing.BillingServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BillingAccountBatcherTest {
+    private Server billingServer;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        //answers every request of the stream, like billing-service does for a patient id it has already seen
+        billingServer = ServerBuilder.forPort(0)
+                .addService(new BillingServiceGrpc.BillingServiceImplBase() {
+                    @Override
+                    public StreamObserver<BillingRequest> createBillingAccounts(StreamObserver<BillingResponse> responseObserver) {
+                        return new StreamObserver<>() {
+                            @Override
+                            public void onNext(BillingRequest request) {
+                                responseObserver.onNext(BillingResponse.newBuilder()
+                                        .setAccountId("account-" + request.getPatientId())
+                                        .setStatus("ACTIVE")
+                                        .setPatientId(request.getPatientId())
+                                        .build());
+                            }
+
+                            @Override
+                            public void onError(Throwable t) {
+                            }
+
+                            @Override
+                            public void onCompleted() {
+                                responseObserver.onCompleted();
+                            }
+                        };
+                    }
+                })
+                .build()
+                .start();
+        channel = ManagedChannelBuilder.forAddress("localhost", billingServer.getPort()).usePlaintext().build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.shutdownNow();
+        billingServer.shutdownNow();
+    }
+
+    @Test
+    void everyRequestForARepeatedPatientIdIsCompleted() {
+        List<CompletableFuture<BillingResponse>> responses = BillingAccountBatcher.stream(
+                BillingServiceGrpc.newStub(channel), 5000, List.of(request("a"), request("b"), request("a")));
+
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals(List.of("account-a", "account-b", "account-a"),
+                responses.stream().map(response -> response.join().getAccountId()).toList());
+    }
+
+    private static BillingRequest request(String patientId) {
+        return BillingRequest.newBuilder().setPatientId(patientId).setName("Name").setEmail(patientId + "@example.com").build();
+    }
+}
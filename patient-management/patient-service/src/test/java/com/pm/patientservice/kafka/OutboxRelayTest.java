@@ -0,0 +1,103 @@
+package com.pm.patientservice.kafka;
+
+import com.pm.patientservice.model.OutboxEvent;
+import com.pm.patientservice.model.OutboxRelayLock;
+import com.pm.patientservice.repository.OutboxEventRepository;
+import com.pm.patientservice.repository.OutboxRelayLockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class OutboxRelayTest {
+
+    @MockitoBean
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxRelayLockRepository outboxRelayLockRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        outboxEventRepository.deleteAll();
+        outboxRelay.createLock();
+        when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void sendsEventsInTheOrderTheyWereWrittenAndDeletesThem() throws InterruptedException {
+        List<OutboxEvent> events = List.of(event("created"), event("updated"), event("deleted"));
+
+        outboxRelay.relay();
+
+        InOrder order = inOrder(kafkaTemplate);
+        for (OutboxEvent event : events) {
+            order.verify(kafkaTemplate).send("patient", "patient-1", event.getPayload());
+        }
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    void sendsNothingWhileAnotherRelayHoldsTheLock() throws InterruptedException {
+        event("created");
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch relayed = new CountDownLatch(1);
+
+        //stands in for the relay of another replica in the middle of a batch
+        Thread otherRelay = new Thread(() -> transactionTemplate.executeWithoutResult(status -> {
+            outboxRelayLockRepository.tryLock(OutboxRelayLock.RELAY).orElseThrow();
+            locked.countDown();
+            try {
+                relayed.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        otherRelay.start();
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        outboxRelay.relay();
+        relayed.countDown();
+        otherRelay.join();
+
+        verify(kafkaTemplate, never()).send(anyString(), anyString(), any(byte[].class));
+        assertEquals(1, outboxEventRepository.count());
+    }
+
+    //createdAt is the relay's order, the sleep keeps it distinct between events
+    private OutboxEvent event(String type) throws InterruptedException {
+        Thread.sleep(2);
+        return outboxEventRepository.save(new OutboxEvent("patient", "patient-1", type.getBytes(), null));
+    }
+}
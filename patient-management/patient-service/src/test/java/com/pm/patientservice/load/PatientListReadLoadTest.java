@@ -0,0 +1,153 @@
+package com.pm.patientservice.load;
+
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Heap and latency of one page of GET /patients, it is skipped in the normal build:
+//  mvn test -Dtest=PatientListReadLoadTest -Dload.test=true
+//entity  = what getPatients did before, the keyset query loads managed Patient entities in a read-write transaction
+//          and PatientMapper turns them into DTOs
+//dto     = what it does now, findFirstPage/findPageAfter select straight into PatientResponseDTO in a read-only transaction
+//Both read the first page and a page after a cursor in the middle of load.test.patients rows (100k by default) on h2.
+//Everything runs on the test thread (h2 is in process), so the thread's allocated bytes are what one page costs
+@EnabledIfSystemProperty(named = "load.test", matches = "true")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:list-reads;DB_CLOSE_DELAY=-1",
+        "logging.level.com.pm=WARN"
+})
+@ActiveProfiles("test")
+class PatientListReadLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(PatientListReadLoadTest.class);
+    private static final String FIRST_PAGE = "SELECT p FROM Patient p ORDER BY p.registeredDate ASC, p.id ASC";
+    private static final String PAGE_AFTER = """
+            SELECT p FROM Patient p
+            WHERE p.registeredDate > :registeredDate
+               OR (p.registeredDate = :registeredDate AND p.id > :id)
+            ORDER BY p.registeredDate ASC, p.id ASC
+            """;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${load.test.patients:100000}")
+    private int patients;
+
+    //getPatients asks for one row more than the default page size of 500
+    @Value("${load.test.page-size:501}")
+    private int pageSize;
+
+    @Value("${load.test.warmup-reads:1000}")
+    private int warmupReads;
+
+    @Value("${load.test.reads:1000}")
+    private int reads;
+
+    @Test
+    void entityPagesAgainstDtoProjectionPages() {
+        insertPatients();
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        PatientResponseDTO middle = readOnly.execute(status ->
+                patientRepository.findFirstPage(PageRequest.of(patients / 2, 1)).get(0));
+        LocalDate registeredDate = middle.getRegisteredDate();
+        UUID id = UUID.fromString(middle.getId());
+
+        Supplier<List<PatientResponseDTO>> entityFirst = () -> readWrite.execute(status ->
+                toDTOs(entityManager.createQuery(FIRST_PAGE, Patient.class).setMaxResults(pageSize).getResultList()));
+        Supplier<List<PatientResponseDTO>> entityAfter = () -> readWrite.execute(status ->
+                toDTOs(entityManager.createQuery(PAGE_AFTER, Patient.class)
+                        .setParameter("registeredDate", registeredDate)
+                        .setParameter("id", id)
+                        .setMaxResults(pageSize)
+                        .getResultList()));
+        Supplier<List<PatientResponseDTO>> dtoFirst = () -> readOnly.execute(status ->
+                patientRepository.findFirstPage(PageRequest.of(0, pageSize)));
+        Supplier<List<PatientResponseDTO>> dtoAfter = () -> readOnly.execute(status ->
+                patientRepository.findPageAfter(registeredDate, id, PageRequest.of(0, pageSize)));
+
+        //same rows in the same order from both paths
+        assertEquals(ids(entityFirst.get()), ids(dtoFirst.get()));
+        assertEquals(ids(entityAfter.get()), ids(dtoAfter.get()));
+
+        measure("entity first page", entityFirst);
+        measure("dto first page", dtoFirst);
+        measure("entity page after", entityAfter);
+        measure("dto page after", dtoAfter);
+    }
+
+    private void measure(String name, Supplier<List<PatientResponseDTO>> page) {
+        for (int i = 0; i < warmupReads; i++) {
+            page.get();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            page.get();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        log.warn("{}: {} ms/page, {} KB allocated/page, {} MB/s allocation rate", name,
+                String.format("%.3f", nanos / 1e6 / reads), allocated / 1024 / reads,
+                Math.round(allocated / 1e6 / (nanos / 1e9)));
+    }
+
+    private void insertPatients() {
+        jdbcTemplate.update("DELETE FROM patient");
+        LocalDate firstRegistered = LocalDate.of(2020, 1, 1);
+        List<Object[]> rows = new ArrayList<>(patients);
+        for (int i = 0; i < patients; i++) {
+            rows.add(new Object[]{UUID.randomUUID(), "Patient " + i, "list-" + i + "@example.com", i + " Main St",
+                    LocalDate.of(1950, 1, 1).plusDays(i % 20000), firstRegistered.plusDays(i % 1500)});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO patient (id, name, email, address, date_of_birth, registered_date)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """, rows);
+    }
+
+    private static List<PatientResponseDTO> toDTOs(List<Patient> patients) {
+        return patients.stream().map(PatientMapper::toDTO).toList();
+    }
+
+    private static List<String> ids(List<PatientResponseDTO> page) {
+        return page.stream().map(PatientResponseDTO::getId).toList();
+    }
+}
@@ -0,0 +1,190 @@
+package com.pm.patientservice.load;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import billing.BillingServiceGrpc;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Load test for the virtual thread mode, it is skipped in the normal build. Run it once per mode and compare:
+//  mvn test -Dtest=PatientServiceLoadTest -Dload.test=true -Dspring.threads.virtual.enabled=false
+//  mvn test -Dtest=PatientServiceLoadTest -Dload.test=true -Dspring.threads.virtual.enabled=true
+//patient-service runs on h2 against a fake billing service that answers after load.test.billing-latency-ms, and
+//load.test.connections clients (5000 by default) keep creating patients over their own connection for the whole run
+//Set -DargLine=-Djdk.virtualThreadScheduler.parallelism=N to try more carrier threads than cpus
+@EnabledIfSystemProperty(named = "load.test", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        //the pool also caps how many virtual threads can be inside the jdbc driver at once, h2 blocks inside synchronized
+        //code so a very large pool lets pinned virtual threads stall every carrier thread
+        "spring.datasource.hikari.maximum-pool-size=${load.test.pool-size:50}",
+        "spring.datasource.hikari.connection-timeout=60000",
+        "server.tomcat.max-connections=10000",
+        "server.tomcat.accept-count=1000",
+        "spring.kafka.listener.auto-startup=false",
+        "outbox.relay.interval-ms=3600000",
+        "logging.level.com.pm=WARN"
+})
+class PatientServiceLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(PatientServiceLoadTest.class);
+    private static final ScheduledExecutorService billingDelays = Executors.newSingleThreadScheduledExecutor();
+    private static Server billingServer;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${spring.threads.virtual.enabled}")
+    private boolean virtualThreads;
+
+    @Value("${load.test.connections:5000}")
+    private int connections;
+
+    @Value("${load.test.duration-seconds:20}")
+    private int durationSeconds;
+
+    @Value("${load.test.warmup-seconds:5}")
+    private int warmupSeconds;
+
+    @DynamicPropertySource
+    static void billingService(DynamicPropertyRegistry registry) throws IOException {
+        long latencyMs = Long.getLong("load.test.billing-latency-ms", 100);
+        //answers without holding a thread, so the fake billing service is never the bottleneck
+        billingServer = ServerBuilder.forPort(0)
+                .addService(new BillingServiceGrpc.BillingServiceImplBase() {
+                    @Override
+                    public void createBillingAccount(BillingRequest request, StreamObserver<BillingResponse> responseObserver) {
+                        billingDelays.schedule(() -> {
+                            responseObserver.onNext(BillingResponse.newBuilder()
+                                    .setAccountId("12345").setStatus("ACTIVE").setPatientId(request.getPatientId()).build());
+                            responseObserver.onCompleted();
+                        }, latencyMs, TimeUnit.MILLISECONDS);
+                    }
+                })
+                .build()
+                .start();
+        registry.add("billing.service.address", () -> "localhost");
+        registry.add("billing.service.grpc.port", billingServer::getPort);
+    }
+
+    @AfterAll
+    static void stopBillingService() {
+        billingServer.shutdownNow();
+        billingDelays.shutdownNow();
+    }
+
+    @Test
+    void createPatientsWithManyConcurrentConnections() throws InterruptedException {
+        URI uri = URI.create("http://localhost:" + port + "/patients");
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        //one HttpClient for everyone, over HTTP/1.1 it opens a connection per request in flight so every client still
+        //holds its own connection, without a selector and its file descriptors per client
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        LoadRun run = new LoadRun(client, uri, warmupEnd, end, connections);
+
+        for (int i = 0; i < connections; i++) {
+            run.sendNext();
+            //spread the connects over the first second instead of hitting the accept queue all at once
+            if (i % 50 == 0) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(run.finished.await(durationSeconds + warmupSeconds + 120L, TimeUnit.SECONDS), "clients did not finish");
+
+        long[] latencies = run.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double throughput = latencies.length / (double) durationSeconds;
+        log.warn("{} threads, {} connections: {} requests/s, p50 {} ms, p99 {} ms, {} errors",
+                virtualThreads ? "virtual" : "platform", connections, Math.round(throughput),
+                percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99), run.errors.sum());
+
+        assertTrue(latencies.length > 0, "no request completed");
+    }
+
+    //The clients are async loops instead of a thread each, so they take no carrier threads away from the server when
+    //it runs on virtual threads in the same jvm
+    private static class LoadRun {
+        private final HttpClient client;
+        private final URI uri;
+        private final long warmupEnd;
+        private final long end;
+        private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final LongAdder errors = new LongAdder();
+        private final CountDownLatch finished;
+
+        LoadRun(HttpClient client, URI uri, long warmupEnd, long end, int connections) {
+            this.client = client;
+            this.uri = uri;
+            this.warmupEnd = warmupEnd;
+            this.end = end;
+            this.finished = new CountDownLatch(connections);
+        }
+
+        void sendNext() {
+            if (System.nanoTime() >= end) {
+                finished.countDown();
+                return;
+            }
+            long start = System.nanoTime();
+            client.sendAsync(createPatientRequest(uri), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (e != null || response.statusCode() != 200) {
+                            errors.increment();
+                        } else if (start >= warmupEnd) {
+                            latencies.add(System.nanoTime() - start);
+                        }
+                        sendNext();
+                    });
+        }
+    }
+
+    private static HttpRequest createPatientRequest(URI uri) {
+        String body = """
+                {"name":"Load Test","email":"load-%s@example.com","address":"1 Main St","dateOfBirth":"1990-01-01","registeredDate":"2024-01-01"}
+                """.formatted(UUID.randomUUID());
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static long percentileMillis(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sortedLatencies[Math.max(0, index)]);
+    }
+}
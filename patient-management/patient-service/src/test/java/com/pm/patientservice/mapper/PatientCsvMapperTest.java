@@ -0,0 +1,31 @@
+package com.pm.patientservice.mapper;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PatientCsvMapperTest {
+
+    @Test
+    void mapsQuotedFieldsWithCommasAndEscapedQuotes() {
+        PatientRequestDTO dto = PatientCsvMapper.toDTO(
+                "John Doe,john.doe@example.com,\"123 Main St, \"\"Apt 4\"\"\",1985-06-15,2024-01-10");
+
+        assertEquals("John Doe", dto.getName());
+        assertEquals("john.doe@example.com", dto.getEmail());
+        assertEquals("123 Main St, \"Apt 4\"", dto.getAddress());
+        assertEquals("1985-06-15", dto.getDateOfBirth());
+        assertEquals("2024-01-10", dto.getRegisteredDate());
+    }
+
+    @Test
+    void leavesMissingColumnsNull() {
+        PatientRequestDTO dto = PatientCsvMapper.toDTO("Jane Smith,jane.smith@example.com");
+
+        assertEquals("Jane Smith", dto.getName());
+        assertNull(dto.getAddress());
+        assertNull(dto.getRegisteredDate());
+    }
+}
@@ -0,0 +1,99 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.dto.PatientSearchResultDTO;
+import com.pm.patientservice.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+class PatientRepositoryTest {
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @BeforeEach
+    void setUp() {
+        patientRepository.deleteAll();
+        for (int i = 0; i < 7; i++) {
+            Patient patient = new Patient();
+            patient.setName("Patient " + i);
+            patient.setEmail("patient" + i + "@example.com");
+            patient.setAddress(i + " Main St");
+            patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+            //several patients share a registered date so the id tie-breaker is exercised
+            patient.setRegisteredDate(LocalDate.of(2024, 1, 1 + i / 3));
+            patientRepository.save(patient);
+        }
+    }
+
+    @Test
+    void keysetPagesVisitEveryPatientOnceInOrder() {
+        PageRequest limit = PageRequest.of(0, 3);
+        List<PatientResponseDTO> visited = new ArrayList<>();
+
+        List<PatientResponseDTO> page = patientRepository.findFirstPage(limit);
+        while (!page.isEmpty()) {
+            visited.addAll(page);
+            PatientResponseDTO last = page.get(page.size() - 1);
+            page = patientRepository.findPageAfter(last.getRegisteredDate(), UUID.fromString(last.getId()), limit);
+        }
+
+        Set<String> ids = new HashSet<>();
+        visited.forEach(patient -> ids.add(patient.getId()));
+        assertEquals(7, visited.size());
+        assertEquals(7, ids.size());
+        assertEquals(ids(patientRepository.findFirstPage(PageRequest.of(0, 7))), ids(visited));
+    }
+
+    @Test
+    void searchMatchesNameOrEmailCaseInsensitively() {
+        Patient patient = new Patient();
+        patient.setName("Jane O'Neil");
+        patient.setEmail("jane_oneil@clinic.org");
+        patient.setAddress("1 High St");
+        patient.setDateOfBirth(LocalDate.of(1980, 5, 5));
+        patient.setRegisteredDate(LocalDate.of(2024, 2, 1));
+        patientRepository.save(patient);
+
+        assertEquals(List.of("Jane O'Neil"), names(patientRepository.search("%o'neil%", PageRequest.of(0, 10))));
+        assertEquals(List.of("Jane O'Neil"), names(patientRepository.search("%clinic.org%", PageRequest.of(0, 10))));
+        //an escaped _ only matches a literal underscore, not any character
+        assertEquals(List.of("Jane O'Neil"), names(patientRepository.search("%\\_%", PageRequest.of(0, 10))));
+        assertEquals(7, patientRepository.search("patient%", PageRequest.of(0, 10)).getNumberOfElements());
+    }
+
+    @Test
+    void searchSlicesKnowWhenThereIsAnotherPage() {
+        Slice<PatientSearchResultDTO> first = patientRepository.search("patient%", PageRequest.of(0, 5));
+        Slice<PatientSearchResultDTO> second = patientRepository.search("patient%", PageRequest.of(1, 5));
+
+        assertEquals(List.of("Patient 0", "Patient 1", "Patient 2", "Patient 3", "Patient 4"), names(first));
+        assertTrue(first.hasNext());
+        assertEquals(List.of("Patient 5", "Patient 6"), names(second));
+        assertFalse(second.hasNext());
+    }
+
+    private static List<String> ids(List<PatientResponseDTO> patients) {
+        return patients.stream().map(PatientResponseDTO::getId).toList();
+    }
+
+    private static List<String> names(Slice<PatientSearchResultDTO> results) {
+        return results.getContent().stream().map(PatientSearchResultDTO::getName).toList();
+    }
+}
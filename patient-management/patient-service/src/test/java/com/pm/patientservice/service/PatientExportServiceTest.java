@@ -0,0 +1,38 @@
+package com.pm.patientservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PatientExportServiceTest {
+    private final PatientRepository patientRepository = mock(PatientRepository.class);
+
+    @Test
+    void writesOneJsonObjectPerLine() throws IOException {
+        UUID maryId = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        UUID johnId = UUID.fromString("00000000-0000-0000-0000-000000000002");
+        when(patientRepository.streamAll()).thenReturn(Stream.of(
+                new PatientResponseDTO(maryId, "Mary", "mary@example.com", "1 Main St", LocalDate.of(1990, 1, 1), LocalDate.of(2024, 1, 1)),
+                new PatientResponseDTO(johnId, "John", "john@example.com", "2 Main St", LocalDate.of(1985, 6, 30), LocalDate.of(2024, 1, 2))));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new PatientExportService(patientRepository, new ObjectMapper(), 1).exportPatients(output);
+
+        assertEquals("""
+                {"id":"00000000-0000-0000-0000-000000000001","name":"Mary","email":"mary@example.com","address":"1 Main St","dateOfBirth":"1990-01-01"}
+                {"id":"00000000-0000-0000-0000-000000000002","name":"John","email":"john@example.com","address":"2 Main St","dateOfBirth":"1985-06-30"}
+                """, output.toString(StandardCharsets.UTF_8));
+    }
+}
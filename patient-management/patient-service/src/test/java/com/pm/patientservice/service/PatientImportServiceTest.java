@@ -0,0 +1,77 @@
+package com.pm.patientservice.service;
+
+import com.pm.patientservice.dto.PatientImportResultDTO;
+import com.pm.patientservice.dto.PatientImportRowResultDTO;
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "patient.import.chunk-size=2")
+@ActiveProfiles("test")
+class PatientImportServiceTest {
+
+    @MockitoBean
+    private BillingServiceGrpcClient billingServiceGrpcClient;
+
+    @Autowired
+    private PatientImportService patientImportService;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Test
+    void emailTakenOnAnotherReplicaIsReportedAsDuplicateAndTheRestOfTheChunkIsCreated() {
+        String prefix = UUID.randomUUID().toString();
+        //saved behind the email filter's back, like a patient created on another replica
+        patientRepository.save(patient(prefix + "-taken@example.com"));
+
+        //chunk 1 is rows 1-2, chunk 2 is rows 3-4 and row 3 hits the unique constraint, which rolls chunk 2 back
+        //until it is retried with the emails checked against the database
+        PatientImportResultDTO result = patientImportService.importPatients(List.of(
+                row(prefix + "-1@example.com"),
+                row(prefix + "-2@example.com"),
+                row(prefix + "-taken@example.com"),
+                row(prefix + "-4@example.com")).iterator());
+
+        assertEquals(3, result.getCreated());
+        assertEquals(1, result.getFailed());
+        assertEquals(List.of("CREATED", "CREATED", "DUPLICATE_EMAIL", "CREATED"),
+                result.getRows().stream().map(PatientImportRowResultDTO::getStatus).toList());
+        assertTrue(patientRepository.existsByEmail(prefix + "-1@example.com"));
+        assertTrue(patientRepository.existsByEmail(prefix + "-4@example.com"));
+        assertEquals(1, patientRepository.findExistingEmails(List.of(prefix + "-taken@example.com")).size());
+    }
+
+    private static PatientRequestDTO row(String email) {
+        PatientRequestDTO row = new PatientRequestDTO();
+        row.setName("Imported Patient");
+        row.setEmail(email);
+        row.setAddress("1 Main St");
+        row.setDateOfBirth("1990-01-01");
+        row.setRegisteredDate("2024-01-01");
+        return row;
+    }
+
+    private static Patient patient(String email) {
+        Patient patient = new Patient();
+        patient.setName("Existing Patient");
+        patient.setEmail(email);
+        patient.setAddress("1 Main St");
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        patient.setRegisteredDate(LocalDate.of(2024, 1, 1));
+        return patient;
+    }
+}
@@ -0,0 +1,72 @@
+package com.pm.patientservice.service;
+
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.exception.EmailAlreadyExistsException;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class PatientServiceTest {
+
+    @MockitoBean
+    private BillingServiceGrpcClient billingServiceGrpcClient;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Test
+    void emailTheFilterHasNotSeenIsStillRejectedByTheUniqueConstraint() {
+        String email = UUID.randomUUID() + "@example.com";
+        //saved behind the email filter's back, like a patient created on another replica
+        Patient existing = new Patient();
+        existing.setName("Existing Patient");
+        existing.setEmail(email);
+        existing.setAddress("1 Main St");
+        existing.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        existing.setRegisteredDate(LocalDate.of(2024, 1, 1));
+        patientRepository.save(existing);
+
+        PatientRequestDTO request = new PatientRequestDTO();
+        request.setName("New Patient");
+        request.setEmail(email);
+        request.setAddress("2 Main St");
+        request.setDateOfBirth("1991-01-01");
+        request.setRegisteredDate("2024-01-01");
+
+        assertThrows(EmailAlreadyExistsException.class, () -> patientService.createPatient(request));
+        assertEquals(1, patientRepository.findExistingEmails(List.of(email)).size());
+    }
+
+    @Test
+    void otherConstraintViolationsAreNotReportedAsADuplicateEmail() {
+        String email = UUID.randomUUID() + "@example.com";
+        PatientRequestDTO request = new PatientRequestDTO();
+        //longer than the name column
+        request.setName("N".repeat(300));
+        request.setEmail(email);
+        request.setAddress("2 Main St");
+        request.setDateOfBirth("1991-01-01");
+        request.setRegisteredDate("2024-01-01");
+
+        assertThrows(DataIntegrityViolationException.class, () -> patientService.createPatient(request));
+        assertEquals(0, patientRepository.findExistingEmails(List.of(email)).size());
+    }
+}
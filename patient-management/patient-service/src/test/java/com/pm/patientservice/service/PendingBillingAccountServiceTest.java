@@ -0,0 +1,73 @@
+package com.pm.patientservice.service;
+
+import billing.BillingRequest;
+import billing.BillingResponse;
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.repository.PendingBillingAccountRepository;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "billing.account.retry.initial-backoff-ms=0")
+@ActiveProfiles("test")
+class PendingBillingAccountServiceTest {
+
+    @MockitoBean
+    private BillingServiceGrpcClient billingServiceGrpcClient;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private PendingBillingAccountService pendingBillingAccountService;
+
+    @Autowired
+    private PendingBillingAccountRepository pendingBillingAccountRepository;
+
+    @Test
+    void failedBillingCallIsKeptAndSentAgainByTheRetryJob() {
+        //other tests in this database leave their own pending accounts behind
+        pendingBillingAccountRepository.deleteAll();
+        when(billingServiceGrpcClient.createBillingAccount(anyString(), anyString(), anyString()))
+                .thenThrow(Status.UNAVAILABLE.asRuntimeException());
+        when(billingServiceGrpcClient.createBillingAccounts(anyList())).thenAnswer(invocation -> {
+            List<BillingRequest> requests = invocation.getArgument(0);
+            return requests.stream()
+                    .map(request -> CompletableFuture.completedFuture(BillingResponse.newBuilder()
+                            .setPatientId(request.getPatientId()).setStatus("ACTIVE").build()))
+                    .toList();
+        });
+
+        //billing is down, the patient is still created
+        PatientRequestDTO request = new PatientRequestDTO();
+        request.setName("Billing Retry");
+        request.setEmail(UUID.randomUUID() + "@example.com");
+        request.setAddress("1 Main St");
+        request.setDateOfBirth("1990-01-01");
+        request.setRegisteredDate("2024-01-01");
+        PatientResponseDTO patient = patientService.createPatient(request);
+        assertNotNull(patient.getId());
+        assertEquals(1, pendingBillingAccountRepository.count());
+
+        pendingBillingAccountService.retry();
+
+        verify(billingServiceGrpcClient).createBillingAccounts(anyList());
+        assertEquals(0, pendingBillingAccountRepository.count());
+    }
+}